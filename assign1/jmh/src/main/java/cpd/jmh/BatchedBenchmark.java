@@ -0,0 +1,72 @@
+package cpd.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BatchedMultiply on BATCH size x size matrices per invocation, scored in matrices per second.
+ * Run with: java -jar target/benchmarks.jar BatchedBenchmark -p size=4,8 -p threads=1,4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(BatchedBenchmark.BATCH)
+@Fork(value = 3, jvmArgsAppend = { "--enable-preview", "--add-modules", "jdk.incubator.vector" })
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class BatchedBenchmark {
+
+    public static final int BATCH = 4096;
+
+    @Param({ "4", "8", "16", "32", "64" })
+    public int size;
+
+    @Param({ "1" })
+    public int threads;
+
+    private double[] a, b, c;
+    private AutoCloseable batched;
+    private Runnable multiply;
+
+    @Setup(Level.Trial)
+    public void setup() throws ReflectiveOperationException {
+        a = new double[BATCH * size * size];
+        b = new double[BATCH * size * size];
+        c = new double[BATCH * size * size];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = 1.0;
+            b[i] = i % (size * size) / size + 1;
+        }
+
+        // BatchedMultiply is in the default package, which cannot be imported from here
+        Class<?> type = Class.forName("BatchedMultiply");
+        batched = (AutoCloseable) type.getConstructor(int.class, int.class).newInstance(size, threads);
+        multiply = (Runnable) type.getMethod("bind", double[].class, double[].class, double[].class, int.class)
+                .invoke(batched, a, b, c, BATCH);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        batched.close();
+    }
+
+    @Benchmark
+    public double[] multiply() {
+        multiply.run();
+        return c;
+    }
+}
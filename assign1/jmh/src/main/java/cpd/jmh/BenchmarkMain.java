@@ -0,0 +1,31 @@
+package cpd.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar: the regular JMH command line, with the GC/allocation profiler
+ * always enabled so every run reports gc.alloc.rate, gc.count and gc.time next to the scores.
+ * Example: java -jar target/benchmarks.jar -p n=1000,1800 -p threads=1,2,4,8
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(cmd);
+        if (cmd.getIncludes().isEmpty())
+            builder.include(MatrixBenchmark.class.getSimpleName());
+        builder.addProfiler(GCProfiler.class);
+
+        Options options = builder.build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,68 @@
+package cpd.jmh;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One multiplication of two n x n matrices per invocation.
+ * The kernel list mirrors Kernels.NAMES; new kernels only need to be registered there
+ * and added to the kernel parameter (or selected with -p kernel=...).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 3, jvmArgsAppend = { "-Xms4g", "-Xmx4g", "--enable-preview", "--add-modules", "jdk.incubator.vector" })
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class MatrixBenchmark {
+
+    @Param({ "mult", "line", "block", "parallel-line", "parallel-block", "vector-line", "strassen", "packed", "morton", "auto" })
+    public String kernel;
+
+    @Param({ "600", "1000", "1400", "1800", "2200", "2600", "3000" })
+    public int n;
+
+    @Param({ "1" })
+    public int threads;
+
+    private double[] pha, phb, phc;
+    private Runnable multiply;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws ReflectiveOperationException {
+        pha = new double[n * n];
+        phb = new double[n * n];
+        phc = new double[n * n];
+
+        // the kernels are in the default package, which cannot be imported from here
+        Method bind = Class.forName("Kernels").getMethod("bind",
+                String.class, double[].class, double[].class, double[].class, int.class, int.class);
+        multiply = (Runnable) bind.invoke(null, kernel, pha, phb, phc, n, threads);
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() throws ReflectiveOperationException {
+        Class.forName("matrixproduct")
+             .getMethod("setupMatrices", double[].class, double[].class, double[].class, int.class)
+             .invoke(null, pha, phb, phc, n);
+    }
+
+    @Benchmark
+    public double[] multiply() {
+        multiply.run();
+        return phc;
+    }
+}
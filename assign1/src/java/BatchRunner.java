@@ -0,0 +1,222 @@
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Non-interactive mode of matrixproduct, used when it is started with arguments:
+ *
+ *   java matrixproduct --kernels line,block --sizes 600:3000:400 --threads 1,2,4
+ *                      --warmup 2 --reps 5 --format csv|json [--out results.csv] [--verify 2]
+ *
+ * Sizes are a list and/or start:end:step ranges. Threads only apply to the parallel kernels.
+ * The result of the last repetition is checked with Freivalds.verify (--verify rounds, 0 to skip).
+ * The three matrices are allocated once for the largest size and reused for the whole sweep.
+ * Results are written with Locale.ROOT so decimals always use a dot; progress goes to stderr.
+ */
+public class BatchRunner {
+
+    public static class Result {
+        public String kernel;
+        public int n, threads, reps;
+        public double min, median, p95, mean, stddev, gflops;
+        public boolean verified;
+        public double maxResidual;
+    }
+
+    public static void run(String[] args) throws FileNotFoundException {
+        List<String> kernels = new ArrayList<>(Arrays.asList("line"));
+        List<Integer> sizes = new ArrayList<>(Arrays.asList(600));
+        List<Integer> threads = new ArrayList<>(Arrays.asList(1));
+        int warmup = 1, reps = 5;
+        String format = "csv", out = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            if (value == null)
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+
+            switch (args[i]) {
+                case "--kernels":
+                    kernels = Arrays.asList(value.split(","));
+                    break;
+                case "--sizes":
+                    sizes = parseInts(value);
+                    break;
+                case "--threads":
+                    threads = parseInts(value);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(value);
+                    break;
+                case "--reps":
+                    reps = Integer.parseInt(value);
+                    break;
+                case "--format":
+                    format = value;
+                    break;
+                case "--out":
+                    out = value;
+                    break;
+                case "--verify":
+                    Freivalds.rounds = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+            i++;
+        }
+
+        if (reps < 1 || warmup < 0 || Freivalds.rounds < 0)
+            throw new IllegalArgumentException("Need at least one repetition and no negative warmup");
+        if (!format.equals("csv") && !format.equals("json"))
+            throw new IllegalArgumentException("Unknown format: " + format);
+        for (String kernel : kernels)
+            if (!Kernels.exists(kernel))
+                throw new IllegalArgumentException("Unknown kernel: " + kernel + " (available: " + String.join(",", Kernels.NAMES) + "," + Kernels.AUTO + ")");
+
+        PrintStream stdout = System.out;
+        List<Result> results;
+
+        // kernels and tuners print their progress, keep it out of the results
+        System.setOut(System.err);
+        try {
+            results = sweep(kernels, sizes, threads, warmup, reps);
+        } finally {
+            System.setOut(stdout);
+        }
+
+        if (out == null) {
+            write(results, format, stdout);
+        } else {
+            try (PrintStream file = new PrintStream(out)) {
+                write(results, format, file);
+            }
+        }
+    }
+
+    public static List<Result> sweep(List<String> kernels, List<Integer> sizes, List<Integer> threads, int warmup, int reps) {
+        int maxN = 0;
+        for (int n : sizes)
+            maxN = Math.max(maxN, n);
+
+        double[] pha = new double[maxN * maxN];
+        double[] phb = new double[maxN * maxN];
+        double[] phc = new double[maxN * maxN];
+        double[] times = new double[reps];
+        List<Result> results = new ArrayList<>();
+
+        for (String kernel : kernels) {
+            List<Integer> threadCounts = Kernels.isParallel(kernel) ? threads : Arrays.asList(1);
+            for (int n : sizes) {
+                for (int t : threadCounts) {
+                    System.err.printf("%s n=%d threads=%d\n", kernel, n, t);
+                    Runnable multiply = Kernels.bind(kernel, pha, phb, phc, n, t);
+
+                    for (int rep = 0; rep < warmup + reps; rep++) {
+                        matrixproduct.setupMatrices(pha, phb, phc, n);
+
+                        long time1 = System.nanoTime();
+                        multiply.run();
+                        long time2 = System.nanoTime();
+
+                        if (rep >= warmup)
+                            times[rep - warmup] = (time2 - time1) / 1000000000.0;
+                    }
+
+                    // outside the timed region, on the result of the last repetition
+                    Freivalds.Result check = Freivalds.verify(n, n, n, pha, phb, phc);
+                    if (!check.passed)
+                        System.err.printf("%s n=%d threads=%d failed verification (max residual %.2e)\n", kernel, n, t, check.maxResidual);
+
+                    Result result = summarize(kernel, n, t, times);
+                    result.verified = check.passed;
+                    result.maxResidual = check.maxResidual;
+                    results.add(result);
+                }
+            }
+        }
+
+        return results;
+    }
+
+    private static Result summarize(String kernel, int n, int threads, double[] times) {
+        double[] sorted = times.clone();
+        Arrays.sort(sorted);
+
+        double sum = 0;
+        for (double time : sorted)
+            sum += time;
+        double mean = sum / sorted.length;
+
+        double squares = 0;
+        for (double time : sorted)
+            squares += (time - mean) * (time - mean);
+
+        Result result = new Result();
+        result.kernel = kernel;
+        result.n = n;
+        result.threads = threads;
+        result.reps = sorted.length;
+        result.min = sorted[0];
+        result.median = percentile(sorted, 50);
+        result.p95 = percentile(sorted, 95);
+        result.mean = mean;
+        result.stddev = sorted.length > 1 ? Math.sqrt(squares / (sorted.length - 1)) : 0;
+        result.gflops = RunMetrics.flops(n, n, n) / result.median / 1e9;
+        return result;
+    }
+
+    // linear interpolation between the closest ranks
+    private static double percentile(double[] sorted, double percent) {
+        double rank = percent / 100 * (sorted.length - 1);
+        int lower = (int) Math.floor(rank);
+        int upper = Math.min(lower + 1, sorted.length - 1);
+        return sorted[lower] + (rank - lower) * (sorted[upper] - sorted[lower]);
+    }
+
+    private static void write(List<Result> results, String format, PrintStream out) {
+        if (format.equals("csv")) {
+            out.println("kernel,n,threads,reps,min_s,median_s,p95_s,mean_s,stddev_s,gflops,verified,max_residual");
+            for (Result r : results)
+                out.printf(Locale.ROOT, "%s,%d,%d,%d,%.6f,%.6f,%.6f,%.6f,%.6f,%.3f,%b,%.3e\n",
+                        r.kernel, r.n, r.threads, r.reps, r.min, r.median, r.p95, r.mean, r.stddev, r.gflops,
+                        r.verified, r.maxResidual);
+            return;
+        }
+
+        out.println("[");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            out.printf(Locale.ROOT, "  {\"kernel\": \"%s\", \"n\": %d, \"threads\": %d, \"reps\": %d, \"min_s\": %.6f, "
+                    + "\"median_s\": %.6f, \"p95_s\": %.6f, \"mean_s\": %.6f, \"stddev_s\": %.6f, \"gflops\": %.3f, "
+                    + "\"verified\": %b, \"max_residual\": %.3e}%s\n",
+                    r.kernel, r.n, r.threads, r.reps, r.min, r.median, r.p95, r.mean, r.stddev, r.gflops,
+                    r.verified, r.maxResidual,
+                    i + 1 < results.size() ? "," : "");
+        }
+        out.println("]");
+    }
+
+    // "600,1000" and/or "600:3000:400" ranges
+    private static List<Integer> parseInts(String value) {
+        List<Integer> values = new ArrayList<>();
+        for (String part : value.split(",")) {
+            String[] range = part.split(":");
+            if (range.length == 1) {
+                values.add(Integer.parseInt(range[0]));
+                continue;
+            }
+
+            int start = Integer.parseInt(range[0]), end = Integer.parseInt(range[1]);
+            int step = range.length > 2 ? Integer.parseInt(range[2]) : 1;
+            if (step <= 0)
+                throw new IllegalArgumentException("Invalid step in " + part);
+            for (int v = start; v <= end; v += step)
+                values.add(v);
+        }
+        return values;
+    }
+}
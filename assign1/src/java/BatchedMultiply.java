@@ -0,0 +1,301 @@
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * C = A * B for a batch of small size x size matrices (4 to 64) stored one after the other:
+ * matrix m of A starts at aOffset + m * aStride, and likewise for B and C (strides >= size * size).
+ * 4 and 8 have their own kernels, which keep a row of C in local variables and are fully unrolled.
+ * 16, 32 and 64 compute C in 4-row by 2-vector register tiles, so every B vector loaded feeds four FMAs
+ * and every broadcast of A two; the size is a constant in each of them, so the loops are unrolled by the JIT.
+ * The other sizes accumulate each row of C in vector registers over k. The kernels are static methods
+ * picked by a branch on the size, so they are inlined whatever sizes were used before.
+ * The batch is split into one contiguous range per thread. The threads are started by the constructor
+ * and wait on a barrier between calls, so multiply() allocates nothing; close() stops them.
+ * The buffers are checked before the workers see a call. A worker that still fails reaches the end barrier
+ * like the others and its exception is rethrown by multiply(); if a barrier breaks (an interrupt), both are
+ * reset, the workers stop and later calls throw IllegalStateException instead of waiting forever.
+ */
+public class BatchedMultiply implements AutoCloseable {
+
+    public static final int MIN_SIZE = 4, MAX_SIZE = 64;
+
+    private static final VectorSpecies<Double> SPECIES = VectorMultiply.SPECIES;
+    // 16, 32 and 64 are a whole number of 2-vector column blocks for any species up to 512 bits
+    private static final boolean TILED = 16 % (2 * SPECIES.length()) == 0;
+
+    public final int size, threads;
+
+    private final Thread[] workers;
+    private final CyclicBarrier start, done;
+
+    // arguments of the current call, published to the workers by the start barrier
+    private double[] a, b, c;
+    private int count, aOffset, aStride, bOffset, bStride, cOffset, cStride;
+    private volatile boolean closed, broken;
+    private volatile RuntimeException failure;  // first exception of the current call
+
+    public BatchedMultiply(int size, int threads) {
+        if (size < MIN_SIZE || size > MAX_SIZE)
+            throw new IllegalArgumentException("Matrix size must be between " + MIN_SIZE + " and " + MAX_SIZE + ": " + size);
+
+        this.size = size;
+        this.threads = Math.max(1, threads);
+
+        start = new CyclicBarrier(this.threads);
+        done = new CyclicBarrier(this.threads);
+        workers = new Thread[this.threads - 1];
+        for (int t = 1; t < this.threads; t++) {
+            int part = t;
+            workers[t - 1] = new Thread(() -> work(part), "batched-" + t);
+            workers[t - 1].setDaemon(true);
+            workers[t - 1].start();
+        }
+    }
+
+    // count matrices packed back to back
+    public void multiply(double[] a, double[] b, double[] c, int count) {
+        int stride = size * size;
+        multiply(a, 0, stride, b, 0, stride, c, 0, stride, count);
+    }
+
+    public void multiply(double[] a, int aOffset, int aStride, double[] b, int bOffset, int bStride,
+                         double[] c, int cOffset, int cStride, int count) {
+        int matrix = size * size;
+        if (aStride < matrix || bStride < matrix || cStride < matrix)
+            throw new IllegalArgumentException("Strides must be at least size * size");
+        if (count < 0)
+            throw new IllegalArgumentException("Negative count: " + count);
+        checkBounds("A", a, aOffset, aStride, count);
+        checkBounds("B", b, bOffset, bStride, count);
+        checkBounds("C", c, cOffset, cStride, count);
+        if (broken)
+            throw new IllegalStateException("A previous call was interrupted, the workers are stopped");
+
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.count = count;
+        this.aOffset = aOffset;
+        this.aStride = aStride;
+        this.bOffset = bOffset;
+        this.bStride = bStride;
+        this.cOffset = cOffset;
+        this.cStride = cStride;
+
+        if (threads == 1) {
+            compute(0);
+            return;
+        }
+
+        failure = null;
+        await(start);
+        run(0);
+        await(done);
+        if (failure != null)
+            throw failure;
+    }
+
+    // count matrices from offset, stride apart, must fit in the array
+    private void checkBounds(String name, double[] array, int offset, int stride, int count) {
+        if (count > 0 && (offset < 0 || offset + (long) (count - 1) * stride + (long) size * size > array.length))
+            throw new IllegalArgumentException(name + " holds fewer than " + count + " matrices from offset " + offset
+                    + " with stride " + stride + ": length " + array.length);
+    }
+
+    // packed batch bound to its buffers, for Kernels-style callers such as the JMH module
+    public Runnable bind(double[] a, double[] b, double[] c, int count) {
+        return () -> multiply(a, b, c, count);
+    }
+
+    private void work(int part) {
+        while (true) {
+            try {
+                await(start);
+            } catch (IllegalStateException e) {
+                return;
+            }
+            if (closed || broken)
+                return;
+            run(part);
+            try {
+                await(done);
+            } catch (IllegalStateException e) {
+                return;
+            }
+        }
+    }
+
+    // computes a part, keeping the first exception so that every thread still reaches the done barrier
+    private void run(int part) {
+        try {
+            compute(part);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                if (failure == null)
+                    failure = e;
+            }
+        }
+    }
+
+    private void compute(int part) {
+        int from = (int) ((long) count * part / threads), to = (int) ((long) count * (part + 1) / threads);
+        for (int m = from; m < to; m++) {
+            int ao = aOffset + m * aStride, bo = bOffset + m * bStride, co = cOffset + m * cStride;
+            if (size == 4)
+                mult4(a, ao, b, bo, c, co);
+            else if (size == 8)
+                mult8(a, ao, b, bo, c, co);
+            else if (size == 16 && TILED)
+                mult16(a, ao, b, bo, c, co);
+            else if (size == 32 && TILED)
+                mult32(a, ao, b, bo, c, co);
+            else if (size == 64 && TILED)
+                mult64(a, ao, b, bo, c, co);
+            else
+                multVector(a, ao, b, bo, c, co, size);
+        }
+    }
+
+    private void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (InterruptedException | BrokenBarrierException e) {
+            broken = true;
+            start.reset();
+            done.reset();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed || broken || threads == 1)
+            return;
+        closed = true;
+        await(start);
+    }
+
+    private static void mult4(double[] a, int ao, double[] b, int bo, double[] c, int co) {
+        double b00 = b[bo], b01 = b[bo + 1], b02 = b[bo + 2], b03 = b[bo + 3];
+        double b10 = b[bo + 4], b11 = b[bo + 5], b12 = b[bo + 6], b13 = b[bo + 7];
+        double b20 = b[bo + 8], b21 = b[bo + 9], b22 = b[bo + 10], b23 = b[bo + 11];
+        double b30 = b[bo + 12], b31 = b[bo + 13], b32 = b[bo + 14], b33 = b[bo + 15];
+
+        for (int i = 0; i < 4; i++) {
+            double a0 = a[ao + i * 4], a1 = a[ao + i * 4 + 1], a2 = a[ao + i * 4 + 2], a3 = a[ao + i * 4 + 3];
+            c[co + i * 4] = a0 * b00 + a1 * b10 + a2 * b20 + a3 * b30;
+            c[co + i * 4 + 1] = a0 * b01 + a1 * b11 + a2 * b21 + a3 * b31;
+            c[co + i * 4 + 2] = a0 * b02 + a1 * b12 + a2 * b22 + a3 * b32;
+            c[co + i * 4 + 3] = a0 * b03 + a1 * b13 + a2 * b23 + a3 * b33;
+        }
+    }
+
+    private static void mult8(double[] a, int ao, double[] b, int bo, double[] c, int co) {
+        for (int i = 0; i < 8; i++) {
+            double c0 = 0, c1 = 0, c2 = 0, c3 = 0, c4 = 0, c5 = 0, c6 = 0, c7 = 0;
+            for (int k = 0; k < 8; k++) {
+                double value = a[ao + i * 8 + k];
+                int row = bo + k * 8;
+                c0 += value * b[row];
+                c1 += value * b[row + 1];
+                c2 += value * b[row + 2];
+                c3 += value * b[row + 3];
+                c4 += value * b[row + 4];
+                c5 += value * b[row + 5];
+                c6 += value * b[row + 6];
+                c7 += value * b[row + 7];
+            }
+            int row = co + i * 8;
+            c[row] = c0;
+            c[row + 1] = c1;
+            c[row + 2] = c2;
+            c[row + 3] = c3;
+            c[row + 4] = c4;
+            c[row + 5] = c5;
+            c[row + 6] = c6;
+            c[row + 7] = c7;
+        }
+    }
+
+    private static void mult16(double[] a, int ao, double[] b, int bo, double[] c, int co) {
+        multTiled(a, ao, b, bo, c, co, 16);
+    }
+
+    private static void mult32(double[] a, int ao, double[] b, int bo, double[] c, int co) {
+        multTiled(a, ao, b, bo, c, co, 32);
+    }
+
+    private static void mult64(double[] a, int ao, double[] b, int bo, double[] c, int co) {
+        multTiled(a, ao, b, bo, c, co, 64);
+    }
+
+    // 4 rows by 2 vectors of C in 8 accumulators over k; size is a multiple of 4 and of 2 vectors
+    private static void multTiled(double[] a, int ao, double[] b, int bo, double[] c, int co, int size) {
+        int lanes = SPECIES.length();
+
+        for (int i = 0; i < size; i += 4) {
+            int row0 = ao + i * size, row1 = row0 + size, row2 = row1 + size, row3 = row2 + size;
+
+            for (int j = 0; j < size; j += 2 * lanes) {
+                DoubleVector c00 = DoubleVector.zero(SPECIES), c01 = DoubleVector.zero(SPECIES);
+                DoubleVector c10 = DoubleVector.zero(SPECIES), c11 = DoubleVector.zero(SPECIES);
+                DoubleVector c20 = DoubleVector.zero(SPECIES), c21 = DoubleVector.zero(SPECIES);
+                DoubleVector c30 = DoubleVector.zero(SPECIES), c31 = DoubleVector.zero(SPECIES);
+
+                for (int k = 0; k < size; k++) {
+                    int rowB = bo + k * size + j;
+                    DoubleVector b0 = DoubleVector.fromArray(SPECIES, b, rowB);
+                    DoubleVector b1 = DoubleVector.fromArray(SPECIES, b, rowB + lanes);
+                    DoubleVector a0 = DoubleVector.broadcast(SPECIES, a[row0 + k]);
+                    c00 = a0.fma(b0, c00);
+                    c01 = a0.fma(b1, c01);
+                    DoubleVector a1 = DoubleVector.broadcast(SPECIES, a[row1 + k]);
+                    c10 = a1.fma(b0, c10);
+                    c11 = a1.fma(b1, c11);
+                    DoubleVector a2 = DoubleVector.broadcast(SPECIES, a[row2 + k]);
+                    c20 = a2.fma(b0, c20);
+                    c21 = a2.fma(b1, c21);
+                    DoubleVector a3 = DoubleVector.broadcast(SPECIES, a[row3 + k]);
+                    c30 = a3.fma(b0, c30);
+                    c31 = a3.fma(b1, c31);
+                }
+
+                int rowC = co + i * size + j;
+                c00.intoArray(c, rowC);
+                c01.intoArray(c, rowC + lanes);
+                c10.intoArray(c, rowC + size);
+                c11.intoArray(c, rowC + size + lanes);
+                c20.intoArray(c, rowC + 2 * size);
+                c21.intoArray(c, rowC + 2 * size + lanes);
+                c30.intoArray(c, rowC + 3 * size);
+                c31.intoArray(c, rowC + 3 * size + lanes);
+            }
+        }
+    }
+
+    // one vector of a row of C at a time, accumulated over k, scalar tail for the last size % lanes columns
+    private static void multVector(double[] a, int ao, double[] b, int bo, double[] c, int co, int size) {
+        int upperBound = SPECIES.loopBound(size);
+
+        for (int i = 0; i < size; i++) {
+            int rowA = ao + i * size, rowC = co + i * size;
+
+            int j = 0;
+            for (; j < upperBound; j += SPECIES.length()) {
+                DoubleVector sum = DoubleVector.zero(SPECIES);
+                for (int k = 0; k < size; k++)
+                    sum = DoubleVector.broadcast(SPECIES, a[rowA + k]).fma(DoubleVector.fromArray(SPECIES, b, bo + k * size + j), sum);
+                sum.intoArray(c, rowC + j);
+            }
+            for (; j < size; j++) {
+                double sum = 0;
+                for (int k = 0; k < size; k++)
+                    sum += a[rowA + k] * b[bo + k * size + j];
+                c[rowC + j] = sum;
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Picks the block size for {@link matrixproduct#multBlock} on the current machine.
+ * Candidates are the powers of two in [16, 512] plus, for every data cache level,
+ * the largest multiple of 8 such that three blocks (A, B and C tiles) fit in that cache.
+ * After one warmup run, every candidate is timed on a matrix of at most TUNE_SIZE and the fastest one is kept.
+ */
+public class BlockTuner {
+
+    private static final int TUNE_SIZE = 1024;
+    private static final int TUNE_REPS = 2;
+    private static final String CACHE_DIR = "/sys/devices/system/cpu/cpu0/cache";
+
+    // fallback when the cache sizes cannot be read (L1 32K, L2 256K, L3 8M)
+    private static final long[] DEFAULT_CACHES = { 32 * 1024, 256 * 1024, 8 * 1024 * 1024 };
+
+    private static final Map<Integer, Integer> tuned = new HashMap<>();
+
+    public static synchronized int tune(int n) {
+        int size = Math.min(n, TUNE_SIZE);
+        Integer cached = tuned.get(size);
+        if (cached != null)
+            return cached;
+
+        double[] pha = new double[size * size];
+        double[] phb = new double[size * size];
+        double[] phc = new double[size * size];
+
+        for (int i = 0; i < size; i++)
+            for (int j = 0; j < size; j++) {
+                pha[i * size + j] = 1.0;
+                phb[i * size + j] = i + 1;
+            }
+
+        int best = 0;
+        double bestTime = Double.MAX_VALUE;
+
+        System.out.printf("Autotuning block size (n=%d)\n", size);
+        List<Integer> candidates = candidates(size);
+
+        // untimed run, so the JIT compiles multBlock before the first candidate is measured
+        matrixproduct.multBlock(pha, phb, phc, size, candidates.get(0));
+
+        for (int blockSize : candidates) {
+            double time = Double.MAX_VALUE;
+            for (int rep = 0; rep < TUNE_REPS; rep++) {
+                long time1 = System.nanoTime();
+                matrixproduct.multBlock(pha, phb, phc, size, blockSize);
+                long time2 = System.nanoTime();
+                time = Math.min(time, (time2 - time1) / 1000000000.0);
+            }
+            System.out.printf("  blockSize=%d: %3.3f seconds\n", blockSize, time);
+
+            if (time < bestTime) {
+                bestTime = time;
+                best = blockSize;
+            }
+        }
+        System.out.printf("Best block size: %d\n", best);
+
+        tuned.put(size, best);
+        return best;
+    }
+
+    public static List<Integer> candidates(int n) {
+        TreeSet<Integer> sizes = new TreeSet<>();
+
+        for (int b = 16; b <= 512; b *= 2)
+            sizes.add(b);
+
+        for (long cache : dataCacheSizes()) {
+            int b = (int) Math.sqrt(cache / (3.0 * Double.BYTES));
+            b -= b % 8;
+            if (b >= 8)
+                sizes.add(b);
+        }
+
+        List<Integer> result = new ArrayList<>();
+        for (int b : sizes)
+            if (b <= n)
+                result.add(b);
+
+        if (result.isEmpty())
+            result.add(n);
+
+        return result;
+    }
+
+    // data/unified cache sizes in bytes, one entry per level, read from sysfs (Linux only)
+    public static long[] dataCacheSizes() {
+        List<Long> sizes = new ArrayList<>();
+
+        for (int index = 0; ; index++) {
+            Path dir = Path.of(CACHE_DIR, "index" + index);
+            if (!Files.isDirectory(dir))
+                break;
+
+            try {
+                String type = Files.readString(dir.resolve("type")).trim();
+                if (type.equals("Instruction"))
+                    continue;
+
+                String size = Files.readString(dir.resolve("size")).trim();
+                sizes.add(parseSize(size));
+            } catch (IOException | NumberFormatException e) {
+                return DEFAULT_CACHES;
+            }
+        }
+
+        if (sizes.isEmpty())
+            return DEFAULT_CACHES;
+
+        long[] result = new long[sizes.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = sizes.get(i);
+        return result;
+    }
+
+    // sysfs or -Dcache.levels size: bytes, or a number followed by K or M (either case)
+    public static long parseSize(String size) {
+        char unit = Character.toUpperCase(size.charAt(size.length() - 1));
+        switch (unit) {
+            case 'K':
+                return Long.parseLong(size.substring(0, size.length() - 1)) * 1024;
+            case 'M':
+                return Long.parseLong(size.substring(0, size.length() - 1)) * 1024 * 1024;
+            default:
+                return Long.parseLong(size);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Set-associative LRU cache hierarchy that replays the pha/phb/phc address streams of the kernels,
+ * to estimate the L1/L2 data cache misses that the C++ version reads from PAPI (PAPI_L1_DCM, PAPI_L2_DCM).
+ * The levels are read from sysfs (size, ways, line size of every data/unified cache), or given with
+ * -Dcache.levels=48K:12,2M:16,105M:15 (size:ways, 64-byte lines). A level is only accessed on a miss in
+ * the level above; write-backs and prefetchers are not modelled, so the counts are demand misses.
+ * Each matrix is placed like a G1 humongous array: the data starts 16 bytes (the array header) past a
+ * 2 MB aligned address, which keeps the set conflicts of power-of-two sizes that the real arrays have.
+ * Large products are sampled: only the first rows of C are replayed and the counts scaled by n / rows
+ * (for the Morton kernel, the first leaf products of its recursion, scaled by the total over those replayed).
+ */
+public class CacheSimulator {
+
+    public static final int LINE_BITS = 6;
+    // accesses replayed before sampling kicks in
+    public static final long MAX_ACCESSES = 1L << 28;
+
+    private static final String CACHE_DIR = "/sys/devices/system/cpu/cpu0/cache";
+    private static final long REGION = 2L << 20, HEADER = 16;
+
+    public static class Level {
+        public final String name;
+        public final long size;
+        public final int ways, sets;
+        public long accesses, misses;
+
+        // line addresses, each set holds its ways in most to least recently used order
+        private final long[] lines;
+
+        public Level(String name, long size, int ways) {
+            this.name = name;
+            this.size = size;
+            this.ways = ways;
+            this.sets = (int) Math.max(1, size / ((long) ways << LINE_BITS));
+            this.lines = new long[sets * ways];
+            Arrays.fill(lines, -1);
+        }
+
+        boolean access(long line) {
+            accesses++;
+            int base = (int) (line % sets) * ways;
+            if (lines[base] == line)
+                return true;
+
+            int way = 1;
+            while (way < ways && lines[base + way] != line)
+                way++;
+
+            boolean hit = way < ways;
+            if (!hit) {
+                misses++;
+                way = ways - 1;
+            }
+            System.arraycopy(lines, base, lines, base + 1, way);
+            lines[base] = line;
+            return hit;
+        }
+    }
+
+    public final Level[] levels;
+    private double scale = 1;
+    private long replayed;  // leaf products of the current Morton replay
+
+    public CacheSimulator(Level... levels) {
+        this.levels = levels;
+    }
+
+    // -Dcache.levels if set, otherwise the data and unified caches of cpu0
+    public static CacheSimulator forHost() {
+        String config = System.getProperty("cache.levels");
+        List<Level> levels = new ArrayList<>();
+
+        if (config != null) {
+            for (String level : config.split(",")) {
+                String[] parts = level.split(":");
+                levels.add(new Level("L" + (levels.size() + 1), BlockTuner.parseSize(parts[0]), Integer.parseInt(parts[1])));
+            }
+            return new CacheSimulator(levels.toArray(new Level[0]));
+        }
+
+        for (int index = 0; ; index++) {
+            Path dir = Path.of(CACHE_DIR, "index" + index);
+            if (!Files.isDirectory(dir))
+                break;
+
+            try {
+                if (Files.readString(dir.resolve("type")).trim().equals("Instruction"))
+                    continue;
+                levels.add(new Level("L" + Files.readString(dir.resolve("level")).trim(),
+                        BlockTuner.parseSize(Files.readString(dir.resolve("size")).trim()),
+                        Integer.parseInt(Files.readString(dir.resolve("ways_of_associativity")).trim())));
+            } catch (IOException | NumberFormatException e) {
+                levels.clear();
+                break;
+            }
+        }
+
+        if (levels.isEmpty()) {
+            long[] sizes = BlockTuner.dataCacheSizes();
+            for (int i = 0; i < sizes.length; i++)
+                levels.add(new Level("L" + (i + 1), sizes[i], 8));
+        }
+        return new CacheSimulator(levels.toArray(new Level[0]));
+    }
+
+    public void access(long address) {
+        long line = address >>> LINE_BITS;
+        for (Level level : levels)
+            if (level.access(line))
+                return;
+    }
+
+    // address of element index of matrix 0 (A), 1 (B) or 2 (C) of elements doubles each
+    public static long address(int matrix, long elements, long index) {
+        long regions = (elements * Double.BYTES + HEADER + REGION - 1) / REGION;
+        return matrix * regions * REGION + HEADER + index * Double.BYTES;
+    }
+
+    // number of rows of C to replay so that about MAX_ACCESSES accesses are simulated
+    public static int sampleRows(int n, double accessesPerRow) {
+        return (int) Math.max(1, Math.min(n, MAX_ACCESSES / accessesPerRow));
+    }
+
+    // i-j-k order of mult: A(i, k) and B(k, j) for every k, then the store of C(i, j)
+    public void replayMult(int n, int rows) {
+        long elements = (long) n * n;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < n; j++) {
+                for (int k = 0; k < n; k++) {
+                    access(address(0, elements, (long) i * n + k));
+                    access(address(1, elements, (long) k * n + j));
+                }
+                access(address(2, elements, (long) i * n + j));
+            }
+        }
+        scale = (double) n / rows;
+    }
+
+    // i-k-j order of multLine: A(i, k) once per k, then B(k, j) and C(i, j) (load and store) for every j
+    public void replayLine(int n, int rows) {
+        long elements = (long) n * n;
+        for (int i = 0; i < rows; i++) {
+            for (int k = 0; k < n; k++) {
+                access(address(0, elements, (long) i * n + k));
+                for (int j = 0; j < n; j++) {
+                    access(address(1, elements, (long) k * n + j));
+                    access(address(2, elements, (long) i * n + j));
+                }
+            }
+        }
+        scale = (double) n / rows;
+    }
+
+    // loops of multBlock, replaying whole block rows until at least rows rows of C are done
+    public void replayBlock(int n, int blockSize, int rows) {
+        long elements = (long) n * n;
+        int done = 0;
+        for (int ii = 0; ii < n && done < rows; ii += blockSize) {
+            int iMax = Math.min(ii + blockSize, n);
+            for (int kk = 0; kk < n; kk += blockSize) {
+                int kMax = Math.min(kk + blockSize, n);
+                for (int jj = 0; jj < n; jj += blockSize) {
+                    int jMax = Math.min(jj + blockSize, n);
+                    for (int i = ii; i < iMax; i++) {
+                        for (int k = kk; k < kMax; k++) {
+                            access(address(0, elements, (long) i * n + k));
+                            for (int j = jj; j < jMax; j++) {
+                                access(address(1, elements, (long) k * n + j));
+                                access(address(2, elements, (long) i * n + j));
+                            }
+                        }
+                    }
+                }
+            }
+            done = iMax;
+        }
+        scale = (double) n / done;
+    }
+
+    // MortonMatrix.multiply on the padded Morton arrays, in recursion order until about MAX_ACCESSES
+    public void replayMorton(int n) {
+        MortonMatrix layout = new MortonMatrix(n);
+        long elements = (long) layout.size * layout.size;
+        int tiles = 1 << layout.levels;
+        long total = (long) tiles * tiles * tiles;
+        double accessesPerLeaf = (double) layout.leaf * layout.leaf * (2.0 * layout.leaf + 1);
+        long leaves = (long) Math.max(1, Math.min(total, MAX_ACCESSES / accessesPerLeaf));
+
+        replayed = 0;
+        replayMorton(elements, 0, 0, 0, tiles, layout.leaf, leaves);
+        scale = (double) total / replayed;
+    }
+
+    // replays until the given number of leaf products is done
+    private void replayMorton(long elements, long ao, long bo, long co, int tiles, int leaf, long leaves) {
+        if (replayed >= leaves)
+            return;
+        if (tiles == 1) {
+            replayed++;
+            for (int i = 0; i < leaf; i++) {
+                for (int k = 0; k < leaf; k++) {
+                    access(address(0, elements, ao + i * leaf + k));
+                    for (int j = 0; j < leaf; j++) {
+                        access(address(1, elements, bo + k * leaf + j));
+                        access(address(2, elements, co + i * leaf + j));
+                    }
+                }
+            }
+            return;
+        }
+
+        int half = tiles / 2;
+        long quarter = (long) half * half * leaf * leaf;
+        long a00 = ao, a01 = ao + quarter, a10 = ao + 2 * quarter, a11 = ao + 3 * quarter;
+        long b00 = bo, b01 = bo + quarter, b10 = bo + 2 * quarter, b11 = bo + 3 * quarter;
+        long c00 = co, c01 = co + quarter, c10 = co + 2 * quarter, c11 = co + 3 * quarter;
+
+        replayMorton(elements, a00, b00, c00, half, leaf, leaves);
+        replayMorton(elements, a01, b10, c00, half, leaf, leaves);
+        replayMorton(elements, a01, b11, c01, half, leaf, leaves);
+        replayMorton(elements, a00, b01, c01, half, leaf, leaves);
+        replayMorton(elements, a10, b01, c11, half, leaf, leaves);
+        replayMorton(elements, a11, b11, c11, half, leaf, leaves);
+        replayMorton(elements, a11, b10, c10, half, leaf, leaves);
+        replayMorton(elements, a10, b00, c10, half, leaf, leaves);
+    }
+
+    public long misses(int level) {
+        return Math.round(levels[level].misses * scale);
+    }
+
+    // same lines as the PAPI counters of the C++ version, plus the last level
+    public void print() {
+        if (scale != 1)
+            System.out.printf("Sampled %.1f%% of the product, counts scaled by %.2f\n", 100 / scale, scale);
+        System.out.printf("Cache: %s\n", describe());
+        for (int level = 0; level < levels.length; level++) {
+            String name = level < 2 ? levels[level].name + " DCM" : levels[level].name + " misses";
+            System.out.printf("%s: %d \n", name, misses(level));
+        }
+    }
+
+    public String describe() {
+        StringBuilder description = new StringBuilder();
+        for (Level level : levels) {
+            if (description.length() > 0)
+                description.append(", ");
+            description.append(String.format("%s %dK %d-way", level.name, level.size / 1024, level.ways));
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,221 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Coordinator of Cannon's algorithm over a q x q grid of MatrixWorker processes on this host.
+ * The coordinator starts the worker JVMs, hands every worker its already skewed A and B tiles
+ * (A(i, i+j), B(i+j, j)) and the peer ports of its left and upper neighbours, and gathers the C tiles.
+ * The workers shift A left and B up through loopback sockets while computing the current tiles.
+ * n is padded with zeros up to a multiple of q.
+ * A worker that exits before connecting, or workers that do not all connect within CONNECT_TIMEOUT
+ * (-Ddistributed.timeout, in ms), fail the run and the remaining workers are killed.
+ */
+public class DistributedMultiply {
+
+    private static final long CONNECT_TIMEOUT = Long.getLong("distributed.timeout", 60000);
+    private static final long ACCEPT_POLL = 200; // ms between liveness checks of the workers
+
+    public static class Result {
+        public double seconds;
+        public double computeSeconds;      // slowest worker
+        public double communicationSeconds; // time spent shifting tiles, slowest worker
+        public double exposedSeconds;       // part of the communication not hidden behind compute
+        public double[] phc;
+
+        public double overlap() {
+            return communicationSeconds == 0 ? 1 : 1 - exposedSeconds / communicationSeconds;
+        }
+    }
+
+    public static Result run(double[] pha, double[] phb, int n, int workers) throws IOException, InterruptedException {
+        int q = (int) Math.round(Math.sqrt(workers));
+        if (q * q != workers)
+            throw new IllegalArgumentException("The number of workers must be a perfect square: " + workers);
+
+        int t = (n + q - 1) / q;
+        List<Process> processes = new ArrayList<>();
+        SocketChannel[] channels = new SocketChannel[workers];
+        int[] peerPorts = new int[workers];
+        Result result = new Result();
+        boolean completed = false;
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+
+            for (int w = 0; w < workers; w++)
+                processes.add(startWorker(port));
+
+            // rank = order of connection, worker (i, j) = (rank / q, rank % q)
+            acceptWorkers(server, processes, channels);
+            for (int w = 0; w < workers; w++)
+                peerPorts[w] = readInts(channels[w], 1)[0];
+
+            long time1 = System.nanoTime();
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(t * t * Double.BYTES);
+            double[] tile = new double[t * t];
+
+            for (int w = 0; w < workers; w++) {
+                int i = w / q, j = w % q;
+                int left = i * q + (j + q - 1) % q;
+                int up = ((i + q - 1) % q) * q + j;
+                writeInts(channels[w], q, t, peerPorts[left], peerPorts[up]);
+
+                int shift = (i + j) % q;
+                getTile(pha, n, i * t, shift * t, t, tile);
+                writeTile(channels[w], tile, buffer);
+                getTile(phb, n, shift * t, j * t, t, tile);
+                writeTile(channels[w], tile, buffer);
+            }
+
+            result.phc = new double[n * n];
+            for (int w = 0; w < workers; w++) {
+                readTile(channels[w], tile, buffer);
+                putTile(result.phc, n, (w / q) * t, (w % q) * t, t, tile);
+
+                long[] times = readLongs(channels[w], 3);
+                result.computeSeconds = Math.max(result.computeSeconds, times[0] / 1000000000.0);
+                result.communicationSeconds = Math.max(result.communicationSeconds, times[1] / 1000000000.0);
+                result.exposedSeconds = Math.max(result.exposedSeconds, times[2] / 1000000000.0);
+            }
+
+            long time2 = System.nanoTime();
+            result.seconds = (time2 - time1) / 1000000000.0;
+            completed = true;
+        } finally {
+            for (SocketChannel channel : channels)
+                if (channel != null)
+                    channel.close();
+            for (Process process : processes) {
+                if (!completed)
+                    process.destroyForcibly();
+                process.waitFor();
+            }
+        }
+
+        return result;
+    }
+
+    // accepts one connection per worker, failing if a worker exits first or the deadline passes
+    private static void acceptWorkers(ServerSocketChannel server, List<Process> processes, SocketChannel[] channels) throws IOException {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+        int connected = 0;
+
+        server.configureBlocking(false);
+        try (Selector selector = Selector.open()) {
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            while (connected < channels.length) {
+                selector.select(ACCEPT_POLL);
+                selector.selectedKeys().clear();
+
+                SocketChannel channel;
+                while (connected < channels.length && (channel = server.accept()) != null) {
+                    channel.configureBlocking(true);
+                    channels[connected++] = channel;
+                }
+                if (connected == channels.length)
+                    break;
+
+                for (Process process : processes)
+                    if (!process.isAlive())
+                        throw new IOException("Worker " + process.pid() + " exited with code " + process.exitValue()
+                                + " before connecting");
+                if (System.currentTimeMillis() > deadline)
+                    throw new IOException("Only " + connected + " of " + channels.length + " workers connected in "
+                            + CONNECT_TIMEOUT + " ms");
+            }
+        }
+    }
+
+    // same JVM flags and class path as this process, so the workers can load the kernels
+    private static Process startWorker(int coordinatorPort) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("MatrixWorker");
+        command.add(String.valueOf(coordinatorPort));
+
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    // t x t tile starting at (row, col), zero outside the n x n matrix
+    private static void getTile(double[] matrix, int n, int row, int col, int t, double[] tile) {
+        for (int i = 0; i < t; i++)
+            for (int j = 0; j < t; j++)
+                tile[i * t + j] = row + i < n && col + j < n ? matrix[(row + i) * n + col + j] : 0;
+    }
+
+    private static void putTile(double[] matrix, int n, int row, int col, int t, double[] tile) {
+        for (int i = 0; i < t && row + i < n; i++)
+            for (int j = 0; j < t && col + j < n; j++)
+                matrix[(row + i) * n + col + j] = tile[i * t + j];
+    }
+
+    // buffer must hold at least tile.length doubles
+    public static void writeTile(SocketChannel channel, double[] tile, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        buffer.asDoubleBuffer().put(tile);
+        buffer.limit(tile.length * Double.BYTES);
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    public static void readTile(SocketChannel channel, double[] tile, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        buffer.limit(tile.length * Double.BYTES);
+        readFully(channel, buffer);
+        DoubleBuffer doubles = buffer.asDoubleBuffer();
+        doubles.get(tile);
+    }
+
+    public static void writeInts(SocketChannel channel, int... values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Integer.BYTES);
+        buffer.asIntBuffer().put(values);
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    public static int[] readInts(SocketChannel channel, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(count * Integer.BYTES);
+        readFully(channel, buffer);
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        return values;
+    }
+
+    public static void writeLongs(SocketChannel channel, long... values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Long.BYTES);
+        buffer.asLongBuffer().put(values);
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    public static long[] readLongs(SocketChannel channel, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(count * Long.BYTES);
+        readFully(channel, buffer);
+        long[] values = new long[count];
+        buffer.asLongBuffer().get(values);
+        return values;
+    }
+
+    // fills buffer up to its limit and flips it
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            if (channel.read(buffer) < 0)
+                throw new IOException("Connection closed by peer");
+        buffer.flip();
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Freivalds' check of C = A * B in O(n^2): for a random vector x, C x must equal A (B x).
+ * A wrong product passes one round with low probability, so a few rounds catch broken kernels
+ * for a fraction of the cost of recomputing the product.
+ * Floating point results are compared with a normwise tolerance: the residual |C x - A (B x)| is
+ * divided by |A| (|B| x), which bounds the rounding error of any of the kernels, and has to stay
+ * below TOLERANCE * (k + n) * eps. Int products are checked exactly (mod 2^32, like the kernels).
+ * The number of rounds defaults to 2 and can be changed with -Dverify.rounds or --verify.
+ */
+public class Freivalds {
+
+    public static final double TOLERANCE = 16;
+
+    public static int rounds = Integer.getInteger("verify.rounds", 2);
+
+    public static class Result {
+        public int rounds;
+        public boolean passed = true;
+        public double maxResidual;
+        public double seconds;
+
+        public void print() {
+            if (rounds == 0)
+                return;
+            System.out.printf("Verification: %s (%d rounds, max residual %.2e, %3.3f seconds)\n",
+                    passed ? "PASS" : "FAIL", rounds, maxResidual, seconds);
+        }
+    }
+
+    // element i of a row-major matrix, so on-heap and off-heap matrices share the check
+    private interface Elements {
+        double get(long index);
+    }
+
+    // A is m x k, B is k x n and C is m x n, the argument order of MatrixKernel
+    public static Result verify(int m, int n, int k, double[] a, double[] b, double[] c) {
+        return verify(m, n, k, i -> a[(int) i], i -> b[(int) i], i -> c[(int) i], Math.ulp(1.0));
+    }
+
+    public static Result verify(int m, int n, int k, float[] a, float[] b, float[] c) {
+        return verify(m, n, k, i -> a[(int) i], i -> b[(int) i], i -> c[(int) i], Math.ulp(1.0f));
+    }
+
+    // square n x n matrices, which may be stored in larger segments
+    public static Result verify(OffHeapMatrix a, OffHeapMatrix b, OffHeapMatrix c, int n) {
+        return verify(n, n, n, a::get, b::get, c::get, Math.ulp(1.0));
+    }
+
+    public static Result verify(int m, int n, int k, int[] a, int[] b, int[] c) {
+        long time1 = System.nanoTime();
+        Random random = ThreadLocalRandom.current();
+        int[] x = new int[n], bx = new int[k];
+        Result result = new Result();
+        result.rounds = rounds;
+
+        for (int round = 0; round < rounds; round++) {
+            for (int j = 0; j < n; j++)
+                x[j] = random.nextInt();
+
+            for (int p = 0; p < k; p++) {
+                int sum = 0;
+                for (int j = 0; j < n; j++)
+                    sum += b[p * n + j] * x[j];
+                bx[p] = sum;
+            }
+
+            for (int i = 0; i < m; i++) {
+                int abx = 0, cx = 0;
+                for (int p = 0; p < k; p++)
+                    abx += a[i * k + p] * bx[p];
+                for (int j = 0; j < n; j++)
+                    cx += c[i * n + j] * x[j];
+                if (abx != cx) {
+                    result.passed = false;
+                    result.maxResidual = Math.max(result.maxResidual, Math.abs((double) cx - abx));
+                }
+            }
+        }
+
+        result.seconds = (System.nanoTime() - time1) / 1000000000.0;
+        return result;
+    }
+
+    private static Result verify(int m, int n, int k, Elements a, Elements b, Elements c, double eps) {
+        long time1 = System.nanoTime();
+        Random random = ThreadLocalRandom.current();
+        double[] x = new double[n], bx = new double[k], bxAbs = new double[k];
+        Result result = new Result();
+        result.rounds = rounds;
+
+        for (int round = 0; round < rounds; round++) {
+            for (int j = 0; j < n; j++)
+                x[j] = random.nextDouble();
+
+            for (int p = 0; p < k; p++) {
+                double sum = 0, abs = 0;
+                for (int j = 0; j < n; j++) {
+                    double value = b.get((long) p * n + j);
+                    sum += value * x[j];
+                    abs += Math.abs(value) * x[j];
+                }
+                bx[p] = sum;
+                bxAbs[p] = abs;
+            }
+
+            double residual = 0, scale = 0;
+            for (int i = 0; i < m; i++) {
+                double abx = 0, abxAbs = 0, cx = 0;
+                for (int p = 0; p < k; p++) {
+                    double value = a.get((long) i * k + p);
+                    abx += value * bx[p];
+                    abxAbs += Math.abs(value) * bxAbs[p];
+                }
+                for (int j = 0; j < n; j++)
+                    cx += c.get((long) i * n + j) * x[j];
+
+                // Math.max keeps NaN, so NaN results fail the check
+                residual = Math.max(residual, Math.abs(cx - abx));
+                scale = Math.max(scale, abxAbs);
+            }
+
+            double relative = scale > 0 ? residual / scale : residual;
+            if (!(relative <= TOLERANCE * (k + n) * eps))
+                result.passed = false;
+            result.maxResidual = Math.max(result.maxResidual, relative);
+        }
+
+        result.seconds = (System.nanoTime() - time1) / 1000000000.0;
+        return result;
+    }
+}
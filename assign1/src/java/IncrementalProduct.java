@@ -0,0 +1,183 @@
+import java.util.Arrays;
+
+/**
+ * Keeps C = A * B up to date while rows or columns of A and B change, in O(k n^2) per update of k rows
+ * or columns instead of the O(n^3) of a new product. The object owns the three n x n row-major arrays.
+ * Replacing rows of A or columns of B recomputes the affected rows or columns of C exactly.
+ * Replacing columns of A or rows of B, and the general rank-k updates A += U V^T and B += U V^T, add a
+ * rank-k correction to C instead; its rounding error adds up over updates, so once the rank of the
+ * corrections since the last full product reaches refreshRank, C is recomputed with the line kernel.
+ * The default refreshRank of n keeps the accumulated error of the same order as the n-term sums of a
+ * full product and costs at most as much as the corrections themselves.
+ * All update methods take the k new rows or columns (or the columns of U and V) as k x n row-major arrays.
+ */
+public class IncrementalProduct {
+
+    public final int n, refreshRank;
+
+    private final double[] a, b, c;
+    private int pendingRank;
+    private long updates, recomputes;
+
+    // refreshRank <= 0 uses the default of n
+    public IncrementalProduct(double[] a, double[] b, int n, int refreshRank) {
+        this.n = n;
+        this.refreshRank = refreshRank > 0 ? refreshRank : n;
+        this.a = a;
+        this.b = b;
+        this.c = new double[n * n];
+        recompute();
+    }
+
+    public double[] a() {
+        return a;
+    }
+
+    public double[] b() {
+        return b;
+    }
+
+    public double[] c() {
+        return c;
+    }
+
+    public long updates() {
+        return updates;
+    }
+
+    public long recomputes() {
+        return recomputes;
+    }
+
+    // C = A * B from scratch, dropping the accumulated corrections
+    public void recompute() {
+        Arrays.fill(c, 0);
+        MatrixKernel.LINE_DOUBLE.multiply(n, n, n, a, b, c);
+        pendingRank = 0;
+        recomputes++;
+    }
+
+    // A(rows[t], :) = values(t, :), then C(rows[t], :) = A(rows[t], :) * B
+    public void replaceRowsA(int[] rows, double[] values) {
+        for (int t = 0; t < rows.length; t++) {
+            int row = rows[t] * n;
+            System.arraycopy(values, t * n, a, row, n);
+            Arrays.fill(c, row, row + n, 0);
+            for (int k = 0; k < n; k++) {
+                double value = a[row + k];
+                for (int j = 0; j < n; j++)
+                    c[row + j] += value * b[k * n + j];
+            }
+        }
+        updates++;
+    }
+
+    // B(:, cols[t]) = values(t, :), then C(:, cols[t]) = A * B(:, cols[t])
+    public void replaceColumnsB(int[] cols, double[] values) {
+        for (int t = 0; t < cols.length; t++)
+            for (int k = 0; k < n; k++)
+                b[k * n + cols[t]] = values[t * n + k];
+
+        for (int i = 0; i < n; i++) {
+            for (int t = 0; t < cols.length; t++) {
+                double sum = 0;
+                for (int k = 0; k < n; k++)
+                    sum += a[i * n + k] * values[t * n + k];
+                c[i * n + cols[t]] = sum;
+            }
+        }
+        updates++;
+    }
+
+    // A(:, cols[t]) = values(t, :), C += (new - old column) * B(cols[t], :)
+    public void replaceColumnsA(int[] cols, double[] values) {
+        for (int i = 0; i < n; i++) {
+            for (int t = 0; t < cols.length; t++) {
+                int col = cols[t];
+                double delta = values[t * n + i] - a[i * n + col];
+                a[i * n + col] = values[t * n + i];
+                if (delta == 0)
+                    continue;
+                for (int j = 0; j < n; j++)
+                    c[i * n + j] += delta * b[col * n + j];
+            }
+        }
+        corrected(cols.length);
+    }
+
+    // B(rows[t], :) = values(t, :), C += A(:, rows[t]) * (new - old row)
+    public void replaceRowsB(int[] rows, double[] values) {
+        double[] delta = new double[rows.length * n];
+        for (int t = 0; t < rows.length; t++) {
+            int row = rows[t] * n;
+            for (int j = 0; j < n; j++) {
+                delta[t * n + j] = values[t * n + j] - b[row + j];
+                b[row + j] = values[t * n + j];
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            for (int t = 0; t < rows.length; t++) {
+                double value = a[i * n + rows[t]];
+                for (int j = 0; j < n; j++)
+                    c[i * n + j] += value * delta[t * n + j];
+            }
+        }
+        corrected(rows.length);
+    }
+
+    // A += U V^T with u(t, :) and v(t, :) the t-th columns of U and V, C += U (V^T B)
+    public void rankUpdateA(double[] u, double[] v, int k) {
+        // w = V^T B, k x n
+        double[] w = new double[k * n];
+        for (int p = 0; p < n; p++)
+            for (int t = 0; t < k; t++) {
+                double value = v[t * n + p];
+                for (int j = 0; j < n; j++)
+                    w[t * n + j] += value * b[p * n + j];
+            }
+
+        for (int i = 0; i < n; i++) {
+            for (int t = 0; t < k; t++) {
+                double value = u[t * n + i];
+                for (int j = 0; j < n; j++) {
+                    a[i * n + j] += value * v[t * n + j];
+                    c[i * n + j] += value * w[t * n + j];
+                }
+            }
+        }
+        corrected(k);
+    }
+
+    // B += U V^T with u(t, :) and v(t, :) the t-th columns of U and V, C += (A U) V^T
+    public void rankUpdateB(double[] u, double[] v, int k) {
+        double[] au = new double[k];
+        for (int i = 0; i < n; i++) {
+            // row i of A U
+            for (int t = 0; t < k; t++) {
+                double sum = 0;
+                for (int p = 0; p < n; p++)
+                    sum += a[i * n + p] * u[t * n + p];
+                au[t] = sum;
+            }
+            for (int t = 0; t < k; t++)
+                for (int j = 0; j < n; j++)
+                    c[i * n + j] += au[t] * v[t * n + j];
+        }
+
+        for (int p = 0; p < n; p++)
+            for (int t = 0; t < k; t++) {
+                double value = u[t * n + p];
+                for (int j = 0; j < n; j++)
+                    b[p * n + j] += value * v[t * n + j];
+            }
+        corrected(k);
+    }
+
+    private void corrected(int rank) {
+        updates++;
+        pendingRank += rank;
+        if (pendingRank >= refreshRank)
+            recompute();
+    }
+}
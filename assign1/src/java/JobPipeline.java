@@ -0,0 +1,260 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Runs a stream of multiplication jobs as a pipeline of four stages, each on its own threads:
+ * load (allocate and initialize A, B and C), compute (the Kernels kernel), verify (Freivalds) and
+ * publish (hands the job to the caller, then drops its buffers). Every stage takes its jobs from a bounded
+ * queue, so a slow stage blocks the one before it and submit() blocks when the load queue is full; at most
+ * about threads + capacity jobs per stage hold their matrices at any time.
+ * While one job is computed the next ones are being initialized and the previous ones verified, which a
+ * sequential OnMult/OnMultLine loop leaves to the compute thread.
+ * For every stage the time spent waiting in its queue and the time in the stage itself are recorded in
+ * log2 histograms; close() drains the pipeline.
+ */
+public class JobPipeline implements AutoCloseable {
+
+    public static final String[] STAGES = { "load", "compute", "verify", "publish" };
+    public static final int LOAD = 0, COMPUTE = 1, VERIFY = 2, PUBLISH = 3;
+
+    public static class Job {
+        public final long id;
+        public final int n;
+        public final String kernel;
+        public double[] pha, phb, phc;
+        public Freivalds.Result check;
+
+        private final long[] queued = new long[STAGES.length];
+
+        public Job(long id, int n, String kernel) {
+            this.id = id;
+            this.n = n;
+            this.kernel = kernel;
+        }
+    }
+
+    // latencies in power of two buckets of microseconds, bucket b holds [2^(b-1), 2^b) us
+    public static class Histogram {
+        private static final int BUCKETS = 40;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong(), sum = new AtomicLong(), max = new AtomicLong();
+
+        public void record(long nanos) {
+            long micros = nanos / 1000;
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+            count.incrementAndGet();
+            sum.addAndGet(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        public long count() {
+            return count.get();
+        }
+
+        public double meanMillis() {
+            return count.get() == 0 ? 0 : sum.get() / 1e6 / count.get();
+        }
+
+        public double maxMillis() {
+            return max.get() / 1e6;
+        }
+
+        // upper bound of the bucket holding the given fraction of the samples
+        public double percentileMillis(double fraction) {
+            long target = (long) Math.ceil(fraction * count.get()), seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += buckets.get(b);
+                if (seen >= target && seen > 0)
+                    return Math.min((1L << b) / 1000.0, maxMillis());
+            }
+            return maxMillis();
+        }
+
+        public void print() {
+            long largest = 1;
+            for (int b = 0; b < BUCKETS; b++)
+                largest = Math.max(largest, buckets.get(b));
+
+            for (int b = 0; b < BUCKETS; b++) {
+                long samples = buckets.get(b);
+                if (samples == 0)
+                    continue;
+                System.out.printf("  < %10.3f ms %6d %s\n", (1L << b) / 1000.0, samples, "#".repeat((int) (40 * samples / largest)));
+            }
+        }
+    }
+
+    private class Stage {
+        final int index;
+        final BlockingQueue<Job> queue;
+        final Thread[] threads;
+        final Consumer<Job> action;
+        final Histogram wait = new Histogram(), service = new Histogram();
+
+        Stage(int index, int threads, int capacity, Consumer<Job> action) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.threads = new Thread[threads];
+            this.action = action;
+            for (int t = 0; t < threads; t++) {
+                this.threads[t] = new Thread(this::work, "pipeline-" + STAGES[index] + "-" + t);
+                this.threads[t].setDaemon(true);
+                this.threads[t].start();
+            }
+        }
+
+        void work() {
+            while (true) {
+                Job job = take(queue);
+                if (job == POISON)
+                    return;
+
+                long start = System.nanoTime();
+                wait.record(start - job.queued[index]);
+                try {
+                    action.accept(job);
+                } catch (RuntimeException e) {
+                    System.err.printf("Job %d failed in %s: %s\n", job.id, STAGES[index], e);
+                    failed.incrementAndGet();
+                    continue;
+                }
+                long end = System.nanoTime();
+                service.record(end - start);
+
+                if (index + 1 < stages.length) {
+                    job.queued[index + 1] = end;
+                    put(stages[index + 1].queue, job);
+                } else {
+                    total.record(end - job.queued[LOAD]);
+                    completed.incrementAndGet();
+                    lastDone = end;
+                }
+            }
+        }
+    }
+
+    private static final Job POISON = new Job(-1, 0, null);
+
+    public final int capacity;
+
+    private final Stage[] stages = new Stage[STAGES.length];
+    private final Histogram total = new Histogram();
+    private final AtomicLong submitted = new AtomicLong(), completed = new AtomicLong(), failed = new AtomicLong();
+    private volatile long firstSubmit, lastDone;
+    private boolean closed;
+
+    // computeThreads run the kernel, the other stages get one thread each
+    public JobPipeline(int computeThreads, int capacity, Consumer<Job> publisher) {
+        this(1, computeThreads, 1, capacity, publisher);
+    }
+
+    public JobPipeline(int loadThreads, int computeThreads, int verifyThreads, int capacity, Consumer<Job> publisher) {
+        this.capacity = Math.max(1, capacity);
+        stages[LOAD] = new Stage(LOAD, loadThreads, this.capacity, JobPipeline::load);
+        stages[COMPUTE] = new Stage(COMPUTE, computeThreads, this.capacity, JobPipeline::compute);
+        stages[VERIFY] = new Stage(VERIFY, verifyThreads, this.capacity, JobPipeline::verify);
+        stages[PUBLISH] = new Stage(PUBLISH, 1, this.capacity, job -> {
+            publisher.accept(job);
+            job.pha = job.phb = job.phc = null;
+        });
+    }
+
+    // blocks while the load queue is full
+    public void submit(Job job) {
+        if (closed)
+            throw new IllegalStateException("Pipeline is closed");
+
+        long now = System.nanoTime();
+        if (submitted.getAndIncrement() == 0)
+            firstSubmit = now;
+        job.queued[LOAD] = now;
+        put(stages[LOAD].queue, job);
+    }
+
+    // waits until every submitted job went through all stages and stops the threads
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+
+        for (Stage stage : stages) {
+            for (int t = 0; t < stage.threads.length; t++)
+                put(stage.queue, POISON);
+            for (Thread thread : stage.threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+    public long completed() {
+        return completed.get();
+    }
+
+    public double seconds() {
+        return (lastDone - firstSubmit) / 1000000000.0;
+    }
+
+    public double jobsPerSecond() {
+        return completed.get() / seconds();
+    }
+
+    public void print() {
+        System.out.printf("Jobs: %d completed, %d failed, %3.3f seconds, %.2f jobs/s\n",
+                completed.get(), failed.get(), seconds(), jobsPerSecond());
+        System.out.println("stage    threads  wait mean(ms)  wait p95(ms)  mean(ms)  p50(ms)  p95(ms)  p99(ms)  max(ms)");
+        for (Stage stage : stages) {
+            System.out.printf("%-8s %7d  %13.3f  %12.3f  %8.3f  %7.3f  %7.3f  %7.3f  %7.3f\n", STAGES[stage.index],
+                    stage.threads.length, stage.wait.meanMillis(), stage.wait.percentileMillis(0.95),
+                    stage.service.meanMillis(), stage.service.percentileMillis(0.5), stage.service.percentileMillis(0.95),
+                    stage.service.percentileMillis(0.99), stage.service.maxMillis());
+        }
+        System.out.printf("%-8s %7s  %13s  %12s  %8.3f  %7.3f  %7.3f  %7.3f  %7.3f\n", "total", "", "", "",
+                total.meanMillis(), total.percentileMillis(0.5), total.percentileMillis(0.95),
+                total.percentileMillis(0.99), total.maxMillis());
+
+        for (Stage stage : stages) {
+            System.out.printf("%s latency:\n", STAGES[stage.index]);
+            stage.service.print();
+        }
+    }
+
+    public static void load(Job job) {
+        job.pha = new double[job.n * job.n];
+        job.phb = new double[job.n * job.n];
+        job.phc = new double[job.n * job.n];
+        matrixproduct.setupMatrices(job.pha, job.phb, job.phc, job.n);
+    }
+
+    public static void compute(Job job) {
+        Kernels.bind(job.kernel, job.pha, job.phb, job.phc, job.n, 1).run();
+    }
+
+    public static void verify(Job job) {
+        job.check = Freivalds.verify(job.n, job.n, job.n, job.pha, job.phb, job.phc);
+    }
+
+    private static Job take(BlockingQueue<Job> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void put(BlockingQueue<Job> queue, Job job) {
+        try {
+            queue.put(job);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
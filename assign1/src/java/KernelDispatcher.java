@@ -0,0 +1,262 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Routes a multiplication to the kernel that was fastest on this host for the closest calibrated size.
+ * On first start every kernel of Kernels.NAMES is timed on SIZES with one thread, and the parallel kernels
+ * also with every thread count of BUDGETS; kernels whose result fails Freivalds.verify are left out.
+ * SIZES go past the last level cache: the largest is the first multiple of 256 whose three matrices take
+ * at least twice the LLC (at most 4096), so the choice for large n is measured out of cache.
+ * BUDGETS are 1, the powers of two below the processor count and the processor count; a thread budget
+ * uses the results of the nearest of them on a log scale.
+ * The winners, the times, the tuned block size and Strassen cutoff are saved as a properties file in
+ * -Dprofile.dir (default ~/.matrixproduct), one file per host name. The profile is calibrated again when the
+ * processor count, cache sizes, vector species or Java version no longer match, or when it lacks a value
+ * (a partial file or one from an older version); delete it to force that.
+ */
+public class KernelDispatcher {
+
+    public static final int[] SIZES = sizes();
+    public static final int[] BUDGETS = budgets();
+
+    // used when no kernel passes verification for a size
+    private static final String FALLBACK = "line";
+    private static final int MAX_SIZE = 4096;
+
+    private static final int REPS = 2;
+    // a kernel this many times slower than the best is not timed on the next size
+    private static final double PRUNE = 8;
+
+    private static KernelDispatcher instance;
+
+    private final Properties profile;
+    private final Path file;
+
+    private KernelDispatcher(Properties profile, Path file) {
+        this.profile = profile;
+        this.file = file;
+    }
+
+    // profile of this host, loaded from disk or calibrated on first use
+    public static synchronized KernelDispatcher get() {
+        if (instance != null)
+            return instance;
+
+        Path file = profilePath();
+        Properties profile = new Properties();
+        if (Files.isReadable(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                profile.load(in);
+            } catch (IOException e) {
+                profile.clear();
+            }
+        }
+
+        if (!hostKey().equals(profile.getProperty("host")) || !complete(profile)) {
+            System.out.printf("Calibrating kernels, the profile is saved to %s\n", file);
+            profile = calibrate();
+            try {
+                Files.createDirectories(file.getParent());
+                try (OutputStream out = Files.newOutputStream(file)) {
+                    profile.store(out, "matrixproduct kernel profile");
+                }
+            } catch (IOException e) {
+                System.out.println("Could not save the kernel profile: " + e.getMessage());
+            }
+        }
+
+        instance = new KernelDispatcher(profile, file);
+        return instance;
+    }
+
+    public static Path profilePath() {
+        String dir = System.getProperty("profile.dir", Paths.get(System.getProperty("user.home"), ".matrixproduct").toString());
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "localhost";
+        }
+        return Paths.get(dir, "profile-" + host + ".properties");
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    // fastest kernel for n x n matrices with the given thread budget
+    public String choose(int n, int threads) {
+        return profile.getProperty("best." + profileThreads(threads) + "." + closestSize(n));
+    }
+
+    public Runnable bind(double[] pha, double[] phb, double[] phc, int n, int threads) {
+        String kernel = choose(n, threads);
+        int size = closestSize(n);
+
+        // tuned values are reused when the calibrated size is the same, otherwise the kernel tunes for n
+        int blockSize = size == n ? Integer.parseInt(profile.getProperty("block." + size)) : 0;
+        int cutoff = size == n ? Integer.parseInt(profile.getProperty("cutoff." + size)) : 0;
+        return Kernels.bind(kernel, pha, phb, phc, n, Math.max(1, threads), blockSize, cutoff);
+    }
+
+    // calibrated size closest to n on a log scale
+    public static int closestSize(int n) {
+        int best = SIZES[0];
+        for (int size : SIZES)
+            if (Math.abs(Math.log((double) n / size)) < Math.abs(Math.log((double) n / best)))
+                best = size;
+        return best;
+    }
+
+    // calibrated thread count closest to the budget on a log scale
+    private static int profileThreads(int threads) {
+        int best = BUDGETS[0];
+        for (int budget : BUDGETS)
+            if (Math.abs(Math.log((double) Math.max(1, threads) / budget)) < Math.abs(Math.log((double) Math.max(1, threads) / best)))
+                best = budget;
+        return best;
+    }
+
+    // 256, 512, 1024 and the first multiple of 256 with A, B and C over twice the last level cache
+    private static int[] sizes() {
+        long[] caches = BlockTuner.dataCacheSizes();
+        long llc = caches[caches.length - 1];
+        int n = (int) Math.ceil(Math.sqrt(2.0 * llc / (3.0 * Double.BYTES)) / 256) * 256;
+        n = Math.min(MAX_SIZE, n);
+        return n > 1024 ? new int[] { 256, 512, 1024, n } : new int[] { 256, 512, 1024 };
+    }
+
+    private static int[] budgets() {
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        List<Integer> budgets = new ArrayList<>();
+        for (int threads = 1; threads < maxThreads; threads *= 2)
+            budgets.add(threads);
+        budgets.add(maxThreads);
+        return budgets.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // every size has a tuned block size and cutoff and a known kernel for every budget
+    private static boolean complete(Properties profile) {
+        List<String> names = Arrays.asList(Kernels.NAMES);
+        try {
+            for (int n : SIZES) {
+                Integer.parseInt(profile.getProperty("block." + n));
+                Integer.parseInt(profile.getProperty("cutoff." + n));
+                for (int threads : BUDGETS)
+                    if (!names.contains(profile.getProperty("best." + threads + "." + n)))
+                        return false;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private static String hostKey() {
+        return Runtime.getRuntime().availableProcessors() + " cpus, caches " + Arrays.toString(BlockTuner.dataCacheSizes())
+                + ", " + VectorMultiply.SPECIES + ", Java " + System.getProperty("java.version");
+    }
+
+    private static Properties calibrate() {
+        Properties profile = new Properties();
+        boolean[] pruned = new boolean[Kernels.NAMES.length];
+
+        profile.setProperty("host", hostKey());
+
+        for (int n : SIZES) {
+            double[] pha = new double[n * n];
+            double[] phb = new double[n * n];
+            double[] phc = new double[n * n];
+            int blockSize = BlockTuner.tune(n);
+            int cutoff = StrassenMultiply.tuneCutoff(n);
+            profile.setProperty("block." + n, Integer.toString(blockSize));
+            profile.setProperty("cutoff." + n, Integer.toString(cutoff));
+
+            // times[b][k]: kernel k with BUDGETS[b] threads, the sequential kernels only run once
+            double[][] times = new double[BUDGETS.length][Kernels.NAMES.length];
+            for (double[] row : times)
+                Arrays.fill(row, Double.MAX_VALUE);
+
+            for (int k = 0; k < Kernels.NAMES.length; k++) {
+                String kernel = Kernels.NAMES[k];
+                if (pruned[k])
+                    continue;
+
+                for (int b = 0; b < BUDGETS.length; b++) {
+                    int threads = BUDGETS[b];
+                    if (!timedAt(kernel, b))
+                        continue;
+                    times[b][k] = time(kernel, pha, phb, phc, n, threads, blockSize, cutoff);
+                    if (times[b][k] < Double.MAX_VALUE)
+                        profile.setProperty("seconds." + n + "." + kernel + (threads > 1 ? "." + threads : ""),
+                                String.format(Locale.ROOT, "%.6f", times[b][k]));
+                    System.out.printf("  n=%d %s%s: %3.3f seconds%s\n", n, kernel, threads > 1 ? " (" + threads + " threads)" : "",
+                            times[b][k] == Double.MAX_VALUE ? 0 : times[b][k], times[b][k] == Double.MAX_VALUE ? " (failed verification)" : "");
+                }
+                if (!Kernels.isParallel(kernel))
+                    for (int b = 1; b < BUDGETS.length; b++)
+                        times[b][k] = times[0][k];
+            }
+
+            for (int b = 0; b < BUDGETS.length; b++) {
+                int best = -1;
+                for (int k = 0; k < Kernels.NAMES.length; k++)
+                    if (times[b][k] < Double.MAX_VALUE && (best < 0 || times[b][k] < times[b][best]))
+                        best = k;
+
+                String kernel = best < 0 ? FALLBACK : Kernels.NAMES[best];
+                profile.setProperty("best." + BUDGETS[b] + "." + n, kernel);
+                if (best < 0)
+                    System.out.printf("No kernel passed verification for n=%d, %d thread(s), using %s\n", n, BUDGETS[b], kernel);
+                else
+                    System.out.printf("Best for n=%d, %d thread(s): %s\n", n, BUDGETS[b], kernel);
+            }
+
+            // a kernel is pruned when it is far behind the fastest of the same thread count in every count it was
+            // timed with, so parallel kernels on many threads do not prune the sequential ones of budget 1
+            boolean[] behind = new boolean[Kernels.NAMES.length];
+            Arrays.fill(behind, true);
+            for (int b = 0; b < BUDGETS.length; b++) {
+                double fastest = Arrays.stream(times[b]).min().getAsDouble();
+                for (int k = 0; k < Kernels.NAMES.length; k++)
+                    if (timedAt(Kernels.NAMES[k], b))
+                        behind[k] &= times[b][k] > PRUNE * fastest;
+            }
+            for (int k = 0; k < Kernels.NAMES.length; k++)
+                pruned[k] |= behind[k];
+        }
+
+        return profile;
+    }
+
+    // parallel kernels are timed with every budget above 1, sequential kernels once, with budget 1
+    private static boolean timedAt(String kernel, int budget) {
+        return Kernels.isParallel(kernel) ? BUDGETS[budget] > 1 : budget == 0;
+    }
+
+    // best of REPS runs in seconds, Double.MAX_VALUE if a result fails verification
+    private static double time(String kernel, double[] pha, double[] phb, double[] phc, int n, int threads, int blockSize, int cutoff) {
+        Runnable multiply = Kernels.bind(kernel, pha, phb, phc, n, threads, blockSize, cutoff);
+        double best = Double.MAX_VALUE;
+        boolean verified = true;
+        for (int rep = 0; rep < REPS; rep++) {
+            matrixproduct.setupMatrices(pha, phb, phc, n);
+            long time1 = System.nanoTime();
+            multiply.run();
+            long time2 = System.nanoTime();
+            best = Math.min(best, (time2 - time1) / 1000000000.0);
+            verified &= Freivalds.verify(n, n, n, pha, phb, phc).passed;
+        }
+        return verified ? best : Double.MAX_VALUE;
+    }
+}
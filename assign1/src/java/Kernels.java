@@ -0,0 +1,77 @@
+import java.util.Arrays;
+
+/**
+ * Name -> kernel lookup for code that drives the kernels without the interactive menu
+ * (the JMH module in assign1/jmh). Kernels are handed out as plain Runnables bound to their
+ * buffers so callers in other packages only need java.lang types.
+ * Kernels that are not parallel ignore the thread count.
+ * "auto" is not a kernel of its own: it lets KernelDispatcher pick one of NAMES from the host profile.
+ */
+public class Kernels {
+
+    public static final String[] NAMES = {
+        "mult", "line", "block", "parallel-line", "parallel-block", "vector-line", "strassen", "packed", "morton"
+    };
+
+    public static final String AUTO = "auto";
+
+    public static boolean isParallel(String name) {
+        return name.startsWith("parallel-") || name.equals(AUTO);
+    }
+
+    public static boolean exists(String name) {
+        return name.equals(AUTO) || Arrays.asList(NAMES).contains(name);
+    }
+
+    public static Runnable bind(String name, double[] pha, double[] phb, double[] phc, int n, int threads) {
+        if (name.equals(AUTO))
+            return KernelDispatcher.get().bind(pha, phb, phc, n, threads);
+        return bind(name, pha, phb, phc, n, threads, 0, 0);
+    }
+
+    // block size and Strassen cutoff are autotuned for n when they are 0
+    public static Runnable bind(String name, double[] pha, double[] phb, double[] phc, int n, int threads,
+                                int blockSize, int cutoff) {
+        switch (name) {
+            case "mult":
+                return () -> matrixproduct.mult(pha, phb, phc, n);
+            case "line":
+                return () -> matrixproduct.multLine(pha, phb, phc, n);
+            case "block": {
+                int size = blockSize > 0 ? blockSize : BlockTuner.tune(n);
+                return () -> matrixproduct.multBlock(pha, phb, phc, n, size);
+            }
+            case "parallel-line":
+                ParallelMultiply.pool(threads);
+                return () -> ParallelMultiply.multLine(pha, phb, phc, n, threads);
+            case "parallel-block": {
+                int size = blockSize > 0 ? blockSize : BlockTuner.tune(n);
+                ParallelMultiply.pool(threads);
+                return () -> ParallelMultiply.multBlock(pha, phb, phc, n, size, threads);
+            }
+            case "vector-line":
+                return () -> VectorMultiply.multLine(pha, phb, phc, n);
+            case "strassen": {
+                StrassenMultiply strassen = new StrassenMultiply(n, cutoff > 0 ? cutoff : StrassenMultiply.tuneCutoff(n));
+                return () -> strassen.multiply(pha, phb, phc);
+            }
+            case "packed": {
+                PackedGemm gemm = new PackedGemm();
+                return () -> gemm.multiply(pha, phb, phc, n);
+            }
+            case "morton": {
+                // includes the conversion to and from the Morton layout
+                MortonMatrix a = new MortonMatrix(n), b = new MortonMatrix(n), c = new MortonMatrix(n);
+                return () -> {
+                    a.copyFrom(pha);
+                    b.copyFrom(phb);
+                    c.copyFrom(phc);
+                    MortonMatrix.multiply(a, b, c);
+                    c.copyTo(phc);
+                };
+            }
+            default:
+                throw new IllegalArgumentException("Unknown kernel: " + name);
+        }
+    }
+}
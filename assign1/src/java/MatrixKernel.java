@@ -0,0 +1,98 @@
+/**
+ * General C = A * B products for row-major matrices: A is m x k, B is k x n and C is m x n.
+ * There is one interface per element type (like java.util.PrimitiveIterator) so the kernels work
+ * on primitive arrays without boxing. C is overwritten.
+ * NAIVE_* use the i-j-k order of OnMult, LINE_* the i-k-j order of OnMultLine.
+ */
+public final class MatrixKernel {
+
+    private MatrixKernel() {
+    }
+
+    public interface OfDouble {
+        void multiply(int m, int n, int k, double[] a, double[] b, double[] c);
+    }
+
+    public interface OfFloat {
+        void multiply(int m, int n, int k, float[] a, float[] b, float[] c);
+    }
+
+    public interface OfInt {
+        void multiply(int m, int n, int k, int[] a, int[] b, int[] c);
+    }
+
+    public static final OfDouble NAIVE_DOUBLE = (m, n, k, a, b, c) -> {
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                double temp = 0;
+                for (int p = 0; p < k; p++)
+                    temp += a[i * k + p] * b[p * n + j];
+                c[i * n + j] = temp;
+            }
+        }
+    };
+
+    public static final OfFloat NAIVE_FLOAT = (m, n, k, a, b, c) -> {
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                float temp = 0;
+                for (int p = 0; p < k; p++)
+                    temp += a[i * k + p] * b[p * n + j];
+                c[i * n + j] = temp;
+            }
+        }
+    };
+
+    public static final OfInt NAIVE_INT = (m, n, k, a, b, c) -> {
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                int temp = 0;
+                for (int p = 0; p < k; p++)
+                    temp += a[i * k + p] * b[p * n + j];
+                c[i * n + j] = temp;
+            }
+        }
+    };
+
+    public static final OfDouble LINE_DOUBLE = (m, n, k, a, b, c) -> {
+        for (int i = 0; i < m; i++) {
+            int rowC = i * n;
+            for (int j = 0; j < n; j++)
+                c[rowC + j] = 0;
+            for (int p = 0; p < k; p++) {
+                double value = a[i * k + p];
+                int rowB = p * n;
+                for (int j = 0; j < n; j++)
+                    c[rowC + j] += value * b[rowB + j];
+            }
+        }
+    };
+
+    public static final OfFloat LINE_FLOAT = (m, n, k, a, b, c) -> {
+        for (int i = 0; i < m; i++) {
+            int rowC = i * n;
+            for (int j = 0; j < n; j++)
+                c[rowC + j] = 0;
+            for (int p = 0; p < k; p++) {
+                float value = a[i * k + p];
+                int rowB = p * n;
+                for (int j = 0; j < n; j++)
+                    c[rowC + j] += value * b[rowB + j];
+            }
+        }
+    };
+
+    public static final OfInt LINE_INT = (m, n, k, a, b, c) -> {
+        for (int i = 0; i < m; i++) {
+            int rowC = i * n;
+            for (int j = 0; j < n; j++)
+                c[rowC + j] = 0;
+            for (int p = 0; p < k; p++) {
+                int value = a[i * k + p];
+                int rowB = p * n;
+                for (int j = 0; j < n; j++)
+                    c[rowC + j] += value * b[rowB + j];
+            }
+        }
+    };
+}
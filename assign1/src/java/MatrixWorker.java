@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * One process of the DistributedMultiply grid, started by the coordinator as
+ * java MatrixWorker <coordinator port>.
+ * In each of the q steps of Cannon's algorithm it computes C += A * B on its tiles with the vector line
+ * kernel while four communication threads send A left and B up and receive the next A and B from the
+ * right and lower neighbours into spare buffers.
+ */
+public class MatrixWorker {
+
+    private static final int A_STREAM = 0, B_STREAM = 1;
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        int coordinatorPort = Integer.parseInt(args[0]);
+
+        try (ServerSocketChannel peers = ServerSocketChannel.open();
+             SocketChannel coordinator = SocketChannel.open()) {
+            peers.bind(new InetSocketAddress(loopback, 0));
+            coordinator.connect(new InetSocketAddress(loopback, coordinatorPort));
+            DistributedMultiply.writeInts(coordinator, ((InetSocketAddress) peers.getLocalAddress()).getPort());
+
+            int[] header = DistributedMultiply.readInts(coordinator, 4);
+            int q = header[0], t = header[1], leftPort = header[2], upPort = header[3];
+
+            double[] a = new double[t * t], b = new double[t * t], c = new double[t * t];
+            double[] nextA = new double[t * t], nextB = new double[t * t];
+            ByteBuffer[] buffers = new ByteBuffer[4];
+            for (int i = 0; i < buffers.length; i++)
+                buffers[i] = ByteBuffer.allocateDirect(t * t * Double.BYTES);
+
+            DistributedMultiply.readTile(coordinator, a, buffers[0]);
+            DistributedMultiply.readTile(coordinator, b, buffers[1]);
+
+            SocketChannel toLeft = null, toUp = null, fromRight = null, fromDown = null;
+            if (q > 1) {
+                toLeft = SocketChannel.open(new InetSocketAddress(loopback, leftPort));
+                DistributedMultiply.writeInts(toLeft, A_STREAM);
+                toUp = SocketChannel.open(new InetSocketAddress(loopback, upPort));
+                DistributedMultiply.writeInts(toUp, B_STREAM);
+
+                for (int i = 0; i < 2; i++) {
+                    SocketChannel peer = peers.accept();
+                    if (DistributedMultiply.readInts(peer, 1)[0] == A_STREAM)
+                        fromRight = peer;
+                    else
+                        fromDown = peer;
+                }
+            }
+
+            ExecutorService comm = Executors.newFixedThreadPool(4);
+            long compute = 0, communication = 0, exposed = 0;
+
+            try {
+                for (int step = 0; step < q; step++) {
+                    boolean shift = step < q - 1;
+                    long time1 = System.nanoTime();
+
+                    List<Future<Long>> transfers = new ArrayList<>();
+                    if (shift) {
+                        SocketChannel left = toLeft, up = toUp, right = fromRight, down = fromDown;
+                        double[] sendA = a, sendB = b, recvA = nextA, recvB = nextB;
+                        transfers.add(comm.submit(() -> timed(() -> DistributedMultiply.writeTile(left, sendA, buffers[0]))));
+                        transfers.add(comm.submit(() -> timed(() -> DistributedMultiply.writeTile(up, sendB, buffers[1]))));
+                        transfers.add(comm.submit(() -> timed(() -> DistributedMultiply.readTile(right, recvA, buffers[2]))));
+                        transfers.add(comm.submit(() -> timed(() -> DistributedMultiply.readTile(down, recvB, buffers[3]))));
+                    }
+
+                    VectorMultiply.multLine(a, b, c, t);
+                    long time2 = System.nanoTime();
+                    compute += time2 - time1;
+
+                    long slowest = 0;
+                    for (Future<Long> transfer : transfers)
+                        slowest = Math.max(slowest, transfer.get());
+                    long time3 = System.nanoTime();
+
+                    if (shift) {
+                        communication += slowest;
+                        exposed += time3 - time2;
+
+                        double[] swap = a; a = nextA; nextA = swap;
+                        swap = b; b = nextB; nextB = swap;
+                    }
+                }
+            } finally {
+                comm.shutdown();
+                for (SocketChannel channel : new SocketChannel[] { toLeft, toUp, fromRight, fromDown })
+                    if (channel != null)
+                        channel.close();
+            }
+
+            DistributedMultiply.writeTile(coordinator, c, buffers[0]);
+            DistributedMultiply.writeLongs(coordinator, compute, communication, exposed);
+        }
+    }
+
+    private interface Transfer {
+        void run() throws IOException;
+    }
+
+    private static long timed(Transfer transfer) throws IOException {
+        long time1 = System.nanoTime();
+        transfer.run();
+        return System.nanoTime() - time1;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Square matrix in tiled Morton (Z-order) layout: the matrix is split into 2^levels x 2^levels tiles
+ * of leaf x leaf elements, the tiles are stored in Z-order (tile (ti, tj) at the interleaved bits of
+ * ti and tj) and every tile is row-major. Any aligned 2^l x 2^l group of tiles is then contiguous,
+ * with its four quadrants stored one after the other.
+ * n is padded with zeros to leaf * 2^levels, choosing the smallest levels with leaf <= MAX_LEAF,
+ * so the padding is below 2^levels and no block size has to be tuned for the machine.
+ */
+public class MortonMatrix {
+
+    public static final int MAX_LEAF = 32;
+
+    public final int n, leaf, levels, size;
+    public final double[] data;
+
+    public MortonMatrix(int n) {
+        int levels = 0;
+        while ((n + (1 << levels) - 1) >> levels > MAX_LEAF)
+            levels++;
+
+        this.n = n;
+        this.levels = levels;
+        this.leaf = (n + (1 << levels) - 1) >> levels;
+        this.size = leaf << levels;
+        this.data = new double[size * size];
+    }
+
+    public static MortonMatrix fromRowMajor(double[] matrix, int n) {
+        MortonMatrix morton = new MortonMatrix(n);
+        morton.copyFrom(matrix);
+        return morton;
+    }
+
+    // offset of the first element of tile (ti, tj)
+    public int tileOffset(int ti, int tj) {
+        return interleave(ti, tj) * leaf * leaf;
+    }
+
+    public double get(int i, int j) {
+        return data[tileOffset(i / leaf, j / leaf) + (i % leaf) * leaf + j % leaf];
+    }
+
+    public void copyFrom(double[] matrix) {
+        int tiles = 1 << levels;
+        for (int ti = 0; ti < tiles; ti++) {
+            for (int tj = 0; tj < tiles; tj++) {
+                int offset = tileOffset(ti, tj);
+                for (int i = 0; i < leaf; i++) {
+                    int row = ti * leaf + i;
+                    for (int j = 0; j < leaf; j++) {
+                        int col = tj * leaf + j;
+                        data[offset + i * leaf + j] = row < n && col < n ? matrix[row * n + col] : 0;
+                    }
+                }
+            }
+        }
+    }
+
+    public void copyTo(double[] matrix) {
+        int tiles = 1 << levels;
+        for (int ti = 0; ti < tiles; ti++) {
+            for (int tj = 0; tj < tiles; tj++) {
+                int offset = tileOffset(ti, tj);
+                for (int i = 0; i < leaf && ti * leaf + i < n; i++) {
+                    int row = ti * leaf + i;
+                    for (int j = 0; j < leaf && tj * leaf + j < n; j++) {
+                        matrix[row * n + tj * leaf + j] = data[offset + i * leaf + j];
+                    }
+                }
+            }
+        }
+    }
+
+    // c += a * b, all three with the same n
+    public static void multiply(MortonMatrix a, MortonMatrix b, MortonMatrix c) {
+        if (a.n != b.n || a.n != c.n)
+            throw new IllegalArgumentException("Matrices must have the same size");
+
+        multiply(a.data, 0, b.data, 0, c.data, 0, 1 << a.levels, a.leaf);
+    }
+
+    // cache-oblivious recursion over tiles x tiles blocks, quadrants are consecutive quarters of a block
+    private static void multiply(double[] a, int ao, double[] b, int bo, double[] c, int co, int tiles, int leaf) {
+        if (tiles == 1) {
+            for (int i = 0; i < leaf; i++) {
+                for (int k = 0; k < leaf; k++) {
+                    double value = a[ao + i * leaf + k];
+                    int rowB = bo + k * leaf, rowC = co + i * leaf;
+                    for (int j = 0; j < leaf; j++)
+                        c[rowC + j] += value * b[rowB + j];
+                }
+            }
+            return;
+        }
+
+        int half = tiles / 2;
+        int quarter = half * half * leaf * leaf;
+        int a00 = ao, a01 = ao + quarter, a10 = ao + 2 * quarter, a11 = ao + 3 * quarter;
+        int b00 = bo, b01 = bo + quarter, b10 = bo + 2 * quarter, b11 = bo + 3 * quarter;
+        int c00 = co, c01 = co + quarter, c10 = co + 2 * quarter, c11 = co + 3 * quarter;
+
+        multiply(a, a00, b, b00, c, c00, half, leaf);
+        multiply(a, a01, b, b10, c, c00, half, leaf);
+        multiply(a, a01, b, b11, c, c01, half, leaf);
+        multiply(a, a00, b, b01, c, c01, half, leaf);
+        multiply(a, a10, b, b01, c, c11, half, leaf);
+        multiply(a, a11, b, b11, c, c11, half, leaf);
+        multiply(a, a11, b, b10, c, c10, half, leaf);
+        multiply(a, a10, b, b00, c, c10, half, leaf);
+    }
+
+    // Z-order index: bits of ti in the odd positions, bits of tj in the even ones
+    private static int interleave(int ti, int tj) {
+        return spread(ti) << 1 | spread(tj);
+    }
+
+    private static int spread(int x) {
+        x &= 0xFFFF;
+        x = (x | (x << 8)) & 0x00FF00FF;
+        x = (x | (x << 4)) & 0x0F0F0F0F;
+        x = (x | (x << 2)) & 0x33333333;
+        x = (x | (x << 1)) & 0x55555555;
+        return x;
+    }
+}
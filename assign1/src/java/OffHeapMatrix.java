@@ -0,0 +1,47 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * Row-major matrix of doubles stored outside the Java heap.
+ * The memory is 64-byte (cache line) aligned, indexed with longs so rows * cols may exceed
+ * Integer.MAX_VALUE, and released as soon as close() is called instead of waiting for the GC.
+ * A shared arena is used so the fork/join kernels can access the segment from any worker thread.
+ * A matrix can be reused for any n x n product with n * n <= capacity().
+ */
+public class OffHeapMatrix implements AutoCloseable {
+
+    public static final long ALIGNMENT = 64;
+
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final long capacity;
+
+    public OffHeapMatrix(long rows, long cols) {
+        this.capacity = Math.multiplyExact(rows, cols);
+        this.arena = Arena.ofShared();
+        this.segment = arena.allocate(capacity * Double.BYTES, ALIGNMENT);
+    }
+
+    public MemorySegment segment() {
+        return segment;
+    }
+
+    // number of doubles the matrix can hold
+    public long capacity() {
+        return capacity;
+    }
+
+    public double get(long index) {
+        return segment.getAtIndex(ValueLayout.JAVA_DOUBLE, index);
+    }
+
+    public void set(long index, double value) {
+        segment.setAtIndex(ValueLayout.JAVA_DOUBLE, index, value);
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+}
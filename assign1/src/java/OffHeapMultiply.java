@@ -0,0 +1,126 @@
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.DoubleVector;
+
+/**
+ * The matrixproduct kernels over OffHeapMatrix storage.
+ * Dimensions stay ints, element indices are computed as longs so n may go past 46340.
+ * Same loop orders and semantics as the heap versions: mult overwrites C, the others accumulate into it.
+ * Only the menu kernels 1-6 (naive, line, block, their fork/join versions and vector line) have off-heap
+ * versions; Strassen, packed GEMM, Morton, batched and sparse work on heap arrays only.
+ */
+public class OffHeapMultiply {
+
+    private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE;
+
+    // same initial values as matrixproduct.setupMatrices
+    public static void setupMatrices(OffHeapMatrix a, OffHeapMatrix b, OffHeapMatrix c, int n) {
+        for (long i = 0; i < n; i++)
+            for (long j = 0; j < n; j++) {
+                a.set(i * n + j, 1.0);
+                b.set(i * n + j, i + 1);
+            }
+        c.segment().asSlice(0, (long) n * n * Double.BYTES).fill((byte) 0);
+    }
+
+    public static void mult(OffHeapMatrix a, OffHeapMatrix b, OffHeapMatrix c, int n) {
+        MemorySegment pha = a.segment(), phb = b.segment(), phc = c.segment();
+
+        for (long i = 0; i < n; i++) {
+            for (long j = 0; j < n; j++) {
+                double temp = 0;
+                for (long k = 0; k < n; k++) {
+                    temp += pha.getAtIndex(DOUBLE, i * n + k) * phb.getAtIndex(DOUBLE, k * n + j);
+                }
+                phc.setAtIndex(DOUBLE, i * n + j, temp);
+            }
+        }
+    }
+
+    public static void multLine(OffHeapMatrix a, OffHeapMatrix b, OffHeapMatrix c, int n) {
+        lineRows(a.segment(), b.segment(), c.segment(), n, 0, n);
+    }
+
+    public static void multBlock(OffHeapMatrix a, OffHeapMatrix b, OffHeapMatrix c, int n, int blockSize) {
+        MemorySegment pha = a.segment(), phb = b.segment(), phc = c.segment();
+
+        for (int ii = 0; ii < n; ii += blockSize) {
+            int iMax = Math.min(ii + blockSize, n);
+            for (int jj = 0; jj < n; jj += blockSize) {
+                blockTile(pha, phb, phc, n, blockSize, ii, iMax, jj, Math.min(jj + blockSize, n));
+            }
+        }
+    }
+
+    public static void multLineParallel(OffHeapMatrix a, OffHeapMatrix b, OffHeapMatrix c, int n, int threads) {
+        MemorySegment pha = a.segment(), phb = b.segment(), phc = c.segment();
+
+        ParallelMultiply.forRows(n, threads,
+                (rowStart, rowEnd) -> lineRows(pha, phb, phc, n, rowStart, rowEnd));
+    }
+
+    public static void multBlockParallel(OffHeapMatrix a, OffHeapMatrix b, OffHeapMatrix c, int n, int blockSize, int threads) {
+        MemorySegment pha = a.segment(), phb = b.segment(), phc = c.segment();
+
+        ParallelMultiply.forTiles(n, blockSize, threads,
+                (rowStart, rowEnd, colStart, colEnd) -> blockTile(pha, phb, phc, n, blockSize, rowStart, rowEnd, colStart, colEnd));
+    }
+
+    public static void multLineVector(OffHeapMatrix a, OffHeapMatrix b, OffHeapMatrix c, int n) {
+        MemorySegment pha = a.segment(), phb = b.segment(), phc = c.segment();
+        ByteOrder order = ByteOrder.nativeOrder();
+        int upperBound = VectorMultiply.SPECIES.loopBound(n);
+        int lanes = VectorMultiply.SPECIES.length();
+
+        for (long i = 0; i < n; i++) {
+            for (long k = 0; k < n; k++) {
+                double value = pha.getAtIndex(DOUBLE, i * n + k);
+                DoubleVector va = DoubleVector.broadcast(VectorMultiply.SPECIES, value);
+
+                int j = 0;
+                for (; j < upperBound; j += lanes) {
+                    long offsetB = (k * n + j) * Double.BYTES;
+                    long offsetC = (i * n + j) * Double.BYTES;
+                    DoubleVector vb = DoubleVector.fromMemorySegment(VectorMultiply.SPECIES, phb, offsetB, order);
+                    DoubleVector vc = DoubleVector.fromMemorySegment(VectorMultiply.SPECIES, phc, offsetC, order);
+                    va.fma(vb, vc).intoMemorySegment(phc, offsetC, order);
+                }
+                for (; j < n; j++) {
+                    long index = i * n + j;
+                    phc.setAtIndex(DOUBLE, index, Math.fma(value, phb.getAtIndex(DOUBLE, k * n + j), phc.getAtIndex(DOUBLE, index)));
+                }
+            }
+        }
+    }
+
+    private static void lineRows(MemorySegment pha, MemorySegment phb, MemorySegment phc, long n, int rowStart, int rowEnd) {
+        for (long i = rowStart; i < rowEnd; i++) {
+            for (long k = 0; k < n; k++) {
+                double value = pha.getAtIndex(DOUBLE, i * n + k);
+                for (long j = 0; j < n; j++) {
+                    long index = i * n + j;
+                    phc.setAtIndex(DOUBLE, index, phc.getAtIndex(DOUBLE, index) + value * phb.getAtIndex(DOUBLE, k * n + j));
+                }
+            }
+        }
+    }
+
+    // C tile [rowStart, rowEnd) x [colStart, colEnd) += A[rows][:] * B[:][cols], walking k in blocks
+    private static void blockTile(MemorySegment pha, MemorySegment phb, MemorySegment phc, long n, int blockSize,
+                                  int rowStart, int rowEnd, int colStart, int colEnd) {
+        for (long kk = 0; kk < n; kk += blockSize) {
+            long kMax = Math.min(kk + blockSize, n);
+            for (long i = rowStart; i < rowEnd; i++) {
+                for (long k = kk; k < kMax; k++) {
+                    double value = pha.getAtIndex(DOUBLE, i * n + k);
+                    for (long j = colStart; j < colEnd; j++) {
+                        long index = i * n + j;
+                        phc.setAtIndex(DOUBLE, index, phc.getAtIndex(DOUBLE, index) + value * phb.getAtIndex(DOUBLE, k * n + j));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * n x n matrix of doubles kept in a file instead of memory, for products larger than the heap.
+ * The file is stored tile by tile: tile (ti, tj) is a row-major tile x tile block at
+ * (ti * tiles + tj) * tile * tile * 8, so every tile is one contiguous region of the file.
+ * The file is mapped in windows of whole tiles, a tile row each (fewer tiles when a row is over 1 GB),
+ * mapped once on first use and reused by every access, so a tiled product costs one mapping per window
+ * instead of one per tile read. Reads and writes use absolute indices, so threads can share the windows.
+ * Tiles past n are padded with zeros. Doubles are in native byte order.
+ */
+public class OutOfCoreMatrix implements AutoCloseable {
+
+    public interface Values {
+        double get(int i, int j);
+    }
+
+    public final Path file;
+    public final int n, tile, tiles;
+
+    private static final long MAX_WINDOW = 1L << 30;
+
+    private final FileChannel channel;
+    private final int windowTiles;          // tiles per mapped window
+    private final DoubleBuffer[] windows;   // mapped on first use
+
+    // temporary files are deleted on close
+    public OutOfCoreMatrix(Path file, int n, int tile, boolean temporary) throws IOException {
+        this.file = file;
+        this.n = n;
+        this.tile = tile;
+        this.tiles = (n + tile - 1) / tile;
+
+        if (temporary)
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.SPARSE, StandardOpenOption.DELETE_ON_CLOSE);
+        else
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        // mappings cannot grow the file
+        long tileBytes = (long) tile * tile * Double.BYTES;
+        long size = (long) tiles * tiles * tileBytes;
+        if (channel.size() < size)
+            channel.write(ByteBuffer.allocate(1), size - 1);
+
+        this.windowTiles = (int) Math.max(1, Math.min(tiles, MAX_WINDOW / tileBytes));
+        this.windows = new DoubleBuffer[(tiles * tiles + windowTiles - 1) / windowTiles];
+    }
+
+    public long tileBytes() {
+        return (long) tile * tile * Double.BYTES;
+    }
+
+    public long fileBytes() {
+        return (long) tiles * tiles * tileBytes();
+    }
+
+    // single element, for printing results
+    public double get(int i, int j) throws IOException {
+        int index = (i / tile) * tiles + j / tile;
+        return window(index).get(start(index) + (i % tile) * tile + j % tile);
+    }
+
+    public void readTile(int ti, int tj, double[] values) throws IOException {
+        int index = ti * tiles + tj;
+        window(index).get(start(index), values, 0, tile * tile);
+    }
+
+    public void writeTile(int ti, int tj, double[] values) throws IOException {
+        int index = ti * tiles + tj;
+        window(index).put(start(index), values, 0, tile * tile);
+    }
+
+    // writes value(i, j) tile by tile, so the matrix never has to fit in memory
+    public void fill(Values values) throws IOException {
+        double[] buffer = new double[tile * tile];
+        for (int ti = 0; ti < tiles; ti++) {
+            for (int tj = 0; tj < tiles; tj++) {
+                for (int i = 0; i < tile; i++) {
+                    int row = ti * tile + i;
+                    for (int j = 0; j < tile; j++) {
+                        int col = tj * tile + j;
+                        buffer[i * tile + j] = row < n && col < n ? values.get(row, col) : 0;
+                    }
+                }
+                writeTile(ti, tj, buffer);
+            }
+        }
+    }
+
+    // window holding tile index = ti * tiles + tj, mapped the first time it is used
+    private synchronized DoubleBuffer window(int index) throws IOException {
+        int w = index / windowTiles;
+        if (windows[w] == null) {
+            long offset = (long) w * windowTiles * tileBytes();
+            long bytes = Math.min((long) windowTiles * tileBytes(), fileBytes() - offset);
+            windows[w] = channel.map(FileChannel.MapMode.READ_WRITE, offset, bytes).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        }
+        return windows[w];
+    }
+
+    // first double of a tile in its window
+    private int start(int index) {
+        return (index % windowTiles) * tile * tile;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,252 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * C = A * B for OutOfCoreMatrix files within a fixed memory budget.
+ * The tile loop runs C tile by C tile along the rows of C (i, then j, then k). The A tiles of the current
+ * row stay cached when the budget allows it, so A is read once and B once per tile row.
+ * j runs back and forth on alternate rows and k on alternate C tiles, so the tiles used last are used
+ * again first and hit the LRU caches, which also helps budgets too small for a whole row of A.
+ * While a tile product is computed, a background thread maps and copies the tiles of the next step.
+ */
+public class OutOfCoreMultiply {
+
+    public static final long DEFAULT_MEMORY = 256L << 20;
+    public static final int MAX_TILE = 8192;
+
+    // tiles of one matrix: LRU cache plus the loads started by prefetch()
+    private class Tiles {
+        final OutOfCoreMatrix matrix;
+        final Map<Long, double[]> cache;
+        final Map<Long, Future<double[]>> pending = new HashMap<>();
+
+        Tiles(OutOfCoreMatrix matrix, int capacity) {
+            this.matrix = matrix;
+            this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, double[]> eldest) {
+                    if (size() <= capacity)
+                        return false;
+                    free.add(eldest.getValue());
+                    return true;
+                }
+            };
+        }
+
+        void prefetch(int ti, int tj) {
+            long key = (long) ti << 32 | tj;
+            if (!cache.containsKey(key) && !pending.containsKey(key))
+                pending.put(key, io.submit(() -> load(matrix, ti, tj)));
+        }
+
+        double[] acquire(int ti, int tj) throws IOException, InterruptedException {
+            long key = (long) ti << 32 | tj;
+            double[] values = cache.get(key);
+            if (values != null)
+                return values;
+
+            Future<double[]> future = pending.remove(key);
+            try {
+                values = future != null ? future.get() : load(matrix, ti, tj);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw new IllegalStateException(e.getCause());
+            }
+            cache.put(key, values);
+            return values;
+        }
+    }
+
+    private final long memoryBytes;
+    private final ConcurrentLinkedQueue<double[]> free = new ConcurrentLinkedQueue<>();
+    private final AtomicLong readNanos = new AtomicLong(), tilesRead = new AtomicLong();
+    private ExecutorService io;
+    private int capacityA, capacityB;
+    private long tileBytes, computeNanos, waitNanos, writeNanos, totalNanos;
+
+    public OutOfCoreMultiply(long memoryBytes) {
+        this.memoryBytes = memoryBytes;
+    }
+
+    // largest tile (multiple of 8) for which a row of A tiles, a B tile, the C tile and two prefetched
+    // tiles fit in the budget, since bigger tiles mean fewer passes over B
+    public static int tileSize(int n, long memoryBytes) {
+        int tile = Math.min(MAX_TILE, (n + 7) / 8 * 8);
+        for (; tile > 8; tile -= 8) {
+            long tiles = (n + tile - 1) / tile;
+            if ((tiles + 4) * tile * tile * Double.BYTES <= memoryBytes)
+                break;
+        }
+        return tile;
+    }
+
+    // (i, j, k) of tile step s into ijk, j reversed on odd rows and k on every other C tile
+    public static void step(int tiles, long s, int[] ijk) {
+        long cTile = s / tiles;
+        int i = (int) (cTile / tiles), jj = (int) (cTile % tiles), kk = (int) (s % tiles);
+        ijk[0] = i;
+        ijk[1] = i % 2 == 0 ? jj : tiles - 1 - jj;
+        ijk[2] = cTile % 2 == 0 ? kk : tiles - 1 - kk;
+    }
+
+    public void multiply(OutOfCoreMatrix a, OutOfCoreMatrix b, OutOfCoreMatrix c) throws IOException, InterruptedException {
+        if (a.n != b.n || a.n != c.n || a.tile != b.tile || a.tile != c.tile)
+            throw new IllegalArgumentException("Matrices must have the same size and tile size");
+
+        int tile = a.tile, tiles = a.tiles;
+        tileBytes = a.tileBytes();
+
+        // C tile and two prefetched tiles besides the caches
+        int cached = (int) Math.min(Integer.MAX_VALUE, Math.max(2, memoryBytes / tileBytes - 3));
+        capacityA = Math.max(1, Math.min(tiles, cached - 1));
+        capacityB = Math.max(1, cached - capacityA);
+
+        Tiles tilesA = new Tiles(a, capacityA), tilesB = new Tiles(b, capacityB);
+        long steps = (long) tiles * tiles * tiles;
+        int[] current = new int[3], next = new int[3];
+        double[] tileC = new double[tile * tile];
+        io = Executors.newSingleThreadExecutor();
+
+        long time1 = System.nanoTime();
+        try {
+            step(tiles, 0, next);
+            tilesA.prefetch(next[0], next[2]);
+            tilesB.prefetch(next[2], next[1]);
+
+            for (long s = 0; s < steps; s++) {
+                step(tiles, s, current);
+                int i = current[0], j = current[1], k = current[2];
+
+                long wait1 = System.nanoTime();
+                double[] tileA = tilesA.acquire(i, k);
+                double[] tileB = tilesB.acquire(k, j);
+                waitNanos += System.nanoTime() - wait1;
+
+                if (s + 1 < steps) {
+                    step(tiles, s + 1, next);
+                    tilesA.prefetch(next[0], next[2]);
+                    tilesB.prefetch(next[2], next[1]);
+                }
+
+                if (s % tiles == 0)
+                    Arrays.fill(tileC, 0);
+
+                long compute1 = System.nanoTime();
+                VectorMultiply.multLine(tileA, tileB, tileC, tile);
+                computeNanos += System.nanoTime() - compute1;
+
+                if (s % tiles == tiles - 1) {
+                    long write1 = System.nanoTime();
+                    c.writeTile(i, j, tileC);
+                    writeNanos += System.nanoTime() - write1;
+                }
+            }
+        } finally {
+            io.shutdownNow();
+        }
+        totalNanos = System.nanoTime() - time1;
+    }
+
+    private double[] load(OutOfCoreMatrix matrix, int ti, int tj) throws IOException {
+        long time1 = System.nanoTime();
+        double[] values = free.poll();
+        if (values == null)
+            values = new double[matrix.tile * matrix.tile];
+
+        matrix.readTile(ti, tj, values);
+        readNanos.addAndGet(System.nanoTime() - time1);
+        tilesRead.incrementAndGet();
+        return values;
+    }
+
+    public double seconds() {
+        return totalNanos / 1000000000.0;
+    }
+
+    public double readBytes() {
+        return (double) tilesRead.get() * tileBytes;
+    }
+
+    public void print(OutOfCoreMatrix a) {
+        long minimum = 2L * a.tiles * a.tiles;
+        System.out.printf("tile=%d tiles=%dx%d cached: %d A tiles, %d B tiles\n", a.tile, a.tiles, a.tiles, capacityA, capacityB);
+        System.out.printf("Tiles read: %d (%.2fx the tiles of A and B), %.1f MB\n",
+                tilesRead.get(), (double) tilesRead.get() / minimum, readBytes() / 1e6);
+        System.out.printf("Compute: %3.3f seconds, read: %3.3f seconds (background), exposed I/O wait: %3.3f seconds, write: %3.3f seconds\n",
+                computeNanos / 1000000000.0, readNanos.get() / 1000000000.0, waitNanos / 1000000000.0, writeNanos / 1000000000.0);
+    }
+
+    // Freivalds.verify for matrices on disk, streaming the tiles once per matrix and round
+    public static Freivalds.Result verify(OutOfCoreMatrix a, OutOfCoreMatrix b, OutOfCoreMatrix c) throws IOException {
+        long time1 = System.nanoTime();
+        Random random = ThreadLocalRandom.current();
+        int size = a.tiles * a.tile, n = a.n;
+        double[] x = new double[size], bx = new double[size], bxAbs = new double[size];
+        double[] abx = new double[size], abxAbs = new double[size], cx = new double[size];
+        double[] tile = new double[a.tile * a.tile];
+        Freivalds.Result result = new Freivalds.Result();
+        result.rounds = Freivalds.rounds;
+
+        for (int round = 0; round < Freivalds.rounds; round++) {
+            for (int j = 0; j < n; j++)
+                x[j] = random.nextDouble();
+
+            Arrays.fill(bx, 0);
+            Arrays.fill(bxAbs, 0);
+            Arrays.fill(abx, 0);
+            Arrays.fill(abxAbs, 0);
+            Arrays.fill(cx, 0);
+            multiplyVector(b, x, x, bx, bxAbs, tile);
+            multiplyVector(a, bx, bxAbs, abx, abxAbs, tile);
+            multiplyVector(c, x, x, cx, null, tile);
+
+            double residual = 0, scale = 0;
+            for (int i = 0; i < n; i++) {
+                residual = Math.max(residual, Math.abs(cx[i] - abx[i]));
+                scale = Math.max(scale, abxAbs[i]);
+            }
+
+            double relative = scale > 0 ? residual / scale : residual;
+            if (!(relative <= Freivalds.TOLERANCE * 2 * n * Math.ulp(1.0)))
+                result.passed = false;
+            result.maxResidual = Math.max(result.maxResidual, relative);
+        }
+
+        result.seconds = (System.nanoTime() - time1) / 1000000000.0;
+        return result;
+    }
+
+    // y += M x and yAbs += |M| xAbs, tile by tile
+    private static void multiplyVector(OutOfCoreMatrix m, double[] x, double[] xAbs, double[] y, double[] yAbs, double[] tile)
+            throws IOException {
+        int t = m.tile;
+        for (int ti = 0; ti < m.tiles; ti++) {
+            for (int tj = 0; tj < m.tiles; tj++) {
+                m.readTile(ti, tj, tile);
+                for (int i = 0; i < t; i++) {
+                    double sum = 0, abs = 0;
+                    for (int j = 0; j < t; j++) {
+                        double value = tile[i * t + j];
+                        sum += value * x[tj * t + j];
+                        abs += Math.abs(value) * xAbs[tj * t + j];
+                    }
+                    y[ti * t + i] += sum;
+                    if (yAbs != null)
+                        yAbs[ti * t + i] += abs;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.Arrays;
+
+/**
+ * GotoBLAS/BLIS style kernel: C += A * B for n x n row-major matrices.
+ * B is packed into KC x NC blocks of NR wide column panels (sized for the L3) and A into MC x KC blocks
+ * of MR tall row panels (sized for the L2), both zero padded to full panels. A 4 x 8 micro-kernel keeps
+ * its 32 accumulators in locals and streams one packed A panel and one packed B panel per k.
+ * Packing and compute time are accumulated separately for the last multiply() call.
+ */
+public class PackedGemm {
+
+    public static final int MR = 4, NR = 8;
+    public static final int MC = 128, KC = 256, NC = 4096;
+
+    private final double[] packA = new double[MC * KC];
+    private final double[] packB = new double[KC * NC];
+
+    // edge tiles are computed here and then copied to the valid part of C
+    private final double[] edge = new double[MR * NR];
+
+    private long packNanos, computeNanos;
+
+    public void multiply(double[] pha, double[] phb, double[] phc, int n) {
+        packNanos = 0;
+        computeNanos = 0;
+
+        for (int jc = 0; jc < n; jc += NC) {
+            int nc = Math.min(NC, n - jc);
+            for (int pc = 0; pc < n; pc += KC) {
+                int kc = Math.min(KC, n - pc);
+
+                long time1 = System.nanoTime();
+                packB(phb, n, pc, kc, jc, nc);
+                packNanos += System.nanoTime() - time1;
+
+                for (int ic = 0; ic < n; ic += MC) {
+                    int mc = Math.min(MC, n - ic);
+
+                    time1 = System.nanoTime();
+                    packA(pha, n, ic, mc, pc, kc);
+                    long time2 = System.nanoTime();
+                    packNanos += time2 - time1;
+
+                    for (int jr = 0; jr < nc; jr += NR) {
+                        for (int ir = 0; ir < mc; ir += MR) {
+                            int mr = Math.min(MR, mc - ir);
+                            int nr = Math.min(NR, nc - jr);
+                            int a = ir * kc, b = jr * kc;
+
+                            if (mr == MR && nr == NR) {
+                                microKernel(kc, packA, a, packB, b, phc, (ic + ir) * n + jc + jr, n);
+                            } else {
+                                Arrays.fill(edge, 0);
+                                microKernel(kc, packA, a, packB, b, edge, 0, NR);
+                                for (int i = 0; i < mr; i++)
+                                    for (int j = 0; j < nr; j++)
+                                        phc[(ic + ir + i) * n + jc + jr + j] += edge[i * NR + j];
+                            }
+                        }
+                    }
+                    computeNanos += System.nanoTime() - time2;
+                }
+            }
+        }
+    }
+
+    public double packSeconds() {
+        return packNanos / 1000000000.0;
+    }
+
+    public double computeSeconds() {
+        return computeNanos / 1000000000.0;
+    }
+
+    // panel r holds rows [ic + r*MR, ic + (r+1)*MR), stored k-major: packA[r*MR*kc + p*MR + i]
+    private void packA(double[] pha, int n, int ic, int mc, int pc, int kc) {
+        for (int ir = 0; ir < mc; ir += MR) {
+            int base = ir * kc;
+            for (int p = 0; p < kc; p++) {
+                for (int i = 0; i < MR; i++) {
+                    packA[base + p * MR + i] = ir + i < mc ? pha[(ic + ir + i) * n + pc + p] : 0;
+                }
+            }
+        }
+    }
+
+    // panel c holds columns [jc + c*NR, jc + (c+1)*NR), stored k-major: packB[c*NR*kc + p*NR + j]
+    private void packB(double[] phb, int n, int pc, int kc, int jc, int nc) {
+        for (int jr = 0; jr < nc; jr += NR) {
+            int base = jr * kc;
+            for (int p = 0; p < kc; p++) {
+                int row = (pc + p) * n + jc + jr;
+                for (int j = 0; j < NR; j++) {
+                    packB[base + p * NR + j] = jr + j < nc ? phb[row + j] : 0;
+                }
+            }
+        }
+    }
+
+    // c[0..MR)[0..NR) (leading dimension ldc, starting at co) += packed A panel * packed B panel
+    private static void microKernel(int kc, double[] a, int ao, double[] b, int bo, double[] c, int co, int ldc) {
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0, c04 = 0, c05 = 0, c06 = 0, c07 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0, c14 = 0, c15 = 0, c16 = 0, c17 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0, c24 = 0, c25 = 0, c26 = 0, c27 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0, c34 = 0, c35 = 0, c36 = 0, c37 = 0;
+
+        for (int p = 0; p < kc; p++) {
+            int ap = ao + p * MR, bp = bo + p * NR;
+            double a0 = a[ap], a1 = a[ap + 1], a2 = a[ap + 2], a3 = a[ap + 3];
+            double b0 = b[bp], b1 = b[bp + 1], b2 = b[bp + 2], b3 = b[bp + 3];
+            double b4 = b[bp + 4], b5 = b[bp + 5], b6 = b[bp + 6], b7 = b[bp + 7];
+
+            c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+            c04 += a0 * b4; c05 += a0 * b5; c06 += a0 * b6; c07 += a0 * b7;
+            c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+            c14 += a1 * b4; c15 += a1 * b5; c16 += a1 * b6; c17 += a1 * b7;
+            c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+            c24 += a2 * b4; c25 += a2 * b5; c26 += a2 * b6; c27 += a2 * b7;
+            c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+            c34 += a3 * b4; c35 += a3 * b5; c36 += a3 * b6; c37 += a3 * b7;
+        }
+
+        int r0 = co, r1 = co + ldc, r2 = co + 2 * ldc, r3 = co + 3 * ldc;
+        c[r0] += c00; c[r0 + 1] += c01; c[r0 + 2] += c02; c[r0 + 3] += c03;
+        c[r0 + 4] += c04; c[r0 + 5] += c05; c[r0 + 6] += c06; c[r0 + 7] += c07;
+        c[r1] += c10; c[r1 + 1] += c11; c[r1 + 2] += c12; c[r1 + 3] += c13;
+        c[r1 + 4] += c14; c[r1 + 5] += c15; c[r1 + 6] += c16; c[r1 + 7] += c17;
+        c[r2] += c20; c[r2 + 1] += c21; c[r2 + 2] += c22; c[r2 + 3] += c23;
+        c[r2 + 4] += c24; c[r2 + 5] += c25; c[r2 + 6] += c26; c[r2 + 7] += c27;
+        c[r3] += c30; c[r3 + 1] += c31; c[r3 + 2] += c32; c[r3 + 3] += c33;
+        c[r3 + 4] += c34; c[r3 + 5] += c35; c[r3 + 6] += c36; c[r3 + 7] += c37;
+    }
+}
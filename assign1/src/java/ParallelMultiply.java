@@ -0,0 +1,140 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork/join versions of the line and block kernels.
+ * The rows (line) or tiles of C (block) are split recursively until they are small enough,
+ * idle workers steal the pending halves from the busy ones.
+ * Every task writes to a disjoint region of phc, so no synchronization is needed.
+ * The splitting is independent of the storage, forRows/forTiles are also used by the off-heap kernels.
+ * One pool is kept per thread count and reused by every call, so the pool start-up is paid once,
+ * outside the timed runs when the caller gets the pool with pool() first.
+ */
+public class ParallelMultiply {
+
+    // rows per leaf task in the line kernel
+    private static final int LINE_THRESHOLD = 16;
+
+    private static final Map<Integer, ForkJoinPool> pools = new ConcurrentHashMap<>();
+
+    public interface RowKernel {
+        void compute(int rowStart, int rowEnd);
+    }
+
+    public interface TileKernel {
+        void compute(int rowStart, int rowEnd, int colStart, int colEnd);
+    }
+
+    public static void multLine(double[] pha, double[] phb, double[] phc, int n, int threads) {
+        forRows(n, threads, (rowStart, rowEnd) -> {
+            for (int i = rowStart; i < rowEnd; i++) {
+                for (int k = 0; k < n; k++) {
+                    double a = pha[i * n + k];
+                    for (int j = 0; j < n; j++) {
+                        phc[i * n + j] += a * phb[k * n + j];
+                    }
+                }
+            }
+        });
+    }
+
+    public static void multBlock(double[] pha, double[] phb, double[] phc, int n, int blockSize, int threads) {
+        forTiles(n, blockSize, threads, (rowStart, rowEnd, colStart, colEnd) -> {
+            for (int kk = 0; kk < n; kk += blockSize) {
+                int kMax = Math.min(kk + blockSize, n);
+                for (int i = rowStart; i < rowEnd; i++) {
+                    for (int k = kk; k < kMax; k++) {
+                        double a = pha[i * n + k];
+                        for (int j = colStart; j < colEnd; j++) {
+                            phc[i * n + j] += a * phb[k * n + j];
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    // shared pool with the given parallelism, its workers are daemon threads
+    public static ForkJoinPool pool(int threads) {
+        return pools.computeIfAbsent(threads, ForkJoinPool::new);
+    }
+
+    public static void forRows(int n, int threads, RowKernel kernel) {
+        pool(threads).invoke(new RowTask(kernel, 0, n));
+    }
+
+    public static void forTiles(int n, int blockSize, int threads, TileKernel kernel) {
+        pool(threads).invoke(new TileTask(kernel, blockSize, 0, n, 0, n));
+    }
+
+    private static class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient RowKernel kernel;
+        private final int rowStart, rowEnd;
+
+        RowTask(RowKernel kernel, int rowStart, int rowEnd) {
+            this.kernel = kernel;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+        }
+
+        @Override
+        protected void compute() {
+            if (rowEnd - rowStart > LINE_THRESHOLD) {
+                int mid = (rowStart + rowEnd) >>> 1;
+                invokeAll(new RowTask(kernel, rowStart, mid),
+                          new RowTask(kernel, mid, rowEnd));
+                return;
+            }
+
+            kernel.compute(rowStart, rowEnd);
+        }
+    }
+
+    // computes the C tile [rowStart, rowEnd) x [colStart, colEnd), splitting the longer side
+    private static class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient TileKernel kernel;
+        private final int blockSize, rowStart, rowEnd, colStart, colEnd;
+
+        TileTask(TileKernel kernel, int blockSize, int rowStart, int rowEnd, int colStart, int colEnd) {
+            this.kernel = kernel;
+            this.blockSize = blockSize;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+            this.colStart = colStart;
+            this.colEnd = colEnd;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = rowEnd - rowStart;
+            int cols = colEnd - colStart;
+
+            if (rows > blockSize && rows >= cols) {
+                int mid = split(rowStart, rowEnd);
+                invokeAll(new TileTask(kernel, blockSize, rowStart, mid, colStart, colEnd),
+                          new TileTask(kernel, blockSize, mid, rowEnd, colStart, colEnd));
+                return;
+            }
+            if (cols > blockSize) {
+                int mid = split(colStart, colEnd);
+                invokeAll(new TileTask(kernel, blockSize, rowStart, rowEnd, colStart, mid),
+                          new TileTask(kernel, blockSize, rowStart, rowEnd, mid, colEnd));
+                return;
+            }
+
+            kernel.compute(rowStart, rowEnd, colStart, colEnd);
+        }
+
+        // split point aligned to the block size so leaves match the sequential tiling
+        private int split(int start, int end) {
+            int blocks = (end - start + blockSize - 1) / blockSize;
+            return start + (blocks / 2) * blockSize;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads recorded results and new runs, lines them up by kernel and n, and reports regressions and the
+ * Java / C++ time ratio:
+ *
+ *   java ResultsComparator [--baseline results_ex1_java.txt,results_ex2_java.txt]
+ *                          [--new run1.txt,run2.csv] [--cpp ../cpp/results_cpp.txt,../cpp/results_ex4.txt]
+ *                          [--threshold 0.1]
+ *
+ * Text files are the output of the menu/runStats of either version: "------Name------" sections, "n=..."
+ * and optional "blockSize=..." / "workers=..." / "size=..." lines, and "Time: x seconds" with a decimal
+ * point or comma. Batch CSV files (BatchRunner) are recognised by their header.
+ * Every file adds samples, so repeated runs of the same kernel and n are pooled. A slowdown is flagged
+ * when Welch's t-test is significant at 5% (one-sided) and, when either side has a single run and no test is
+ * possible, when the new time is more than threshold slower. Without --new the Java baselines are compared
+ * with C++ only.
+ */
+public class ResultsComparator {
+
+    private static final Pattern SECTION = Pattern.compile("^-{3,}\\s*(.+?)\\s*-{3,}$");
+    private static final Pattern SIZE = Pattern.compile("^n=(\\d+)\\s*$");
+    private static final Pattern QUALIFIER = Pattern.compile("^((?:blockSize|workers|size)=\\d+.*)$");
+    private static final Pattern TIME = Pattern.compile("^Time:\\s*(\\d+(?:[.,]\\d+)?)\\s*seconds");
+
+    // one-sided 95% critical values of Student's t for 1..30 degrees of freedom
+    private static final double[] T_CRITICAL = {
+        6.314, 2.920, 2.353, 2.132, 2.015, 1.943, 1.895, 1.860, 1.833, 1.812,
+        1.796, 1.782, 1.771, 1.761, 1.753, 1.746, 1.740, 1.734, 1.729, 1.725,
+        1.721, 1.717, 1.714, 1.711, 1.708, 1.706, 1.703, 1.701, 1.699, 1.697
+    };
+
+    // running count, mean and variance of the times of one kernel and n
+    public static class Samples {
+        public long count;
+        public double sum, sumSquares;
+
+        public void add(double seconds) {
+            count++;
+            sum += seconds;
+            sumSquares += seconds * seconds;
+        }
+
+        // a summarized batch result: reps runs with this mean and sample standard deviation
+        public void add(long reps, double mean, double stddev) {
+            count += reps;
+            sum += mean * reps;
+            sumSquares += stddev * stddev * (reps - 1) + mean * mean * reps;
+        }
+
+        public double mean() {
+            return sum / count;
+        }
+
+        public double variance() {
+            return count > 1 ? Math.max(0, (sumSquares - sum * sum / count) / (count - 1)) : 0;
+        }
+    }
+
+    // kernel -> n -> samples, kernels in the order they were first seen
+    public static class Results {
+        public final Map<String, TreeMap<Integer, Samples>> kernels = new LinkedHashMap<>();
+
+        Samples get(String kernel, int n) {
+            return kernels.computeIfAbsent(kernel, k -> new TreeMap<>()).computeIfAbsent(n, k -> new Samples());
+        }
+
+        Samples find(String kernel, int n) {
+            TreeMap<Integer, Samples> sizes = kernels.get(kernel);
+            return sizes == null ? null : sizes.get(n);
+        }
+    }
+
+    public static void main(String[] args) {
+        List<String> baseline = Arrays.asList("results_ex1_java.txt", "results_ex2_java.txt");
+        List<String> cpp = Arrays.asList("../cpp/results_cpp.txt", "../cpp/results_ex4.txt");
+        List<String> runs = new ArrayList<>();
+        double threshold = 0.1;
+
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length)
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+
+                switch (args[i]) {
+                    case "--baseline":
+                        baseline = Arrays.asList(args[i + 1].split(","));
+                        break;
+                    case "--new":
+                        runs = Arrays.asList(args[i + 1].split(","));
+                        break;
+                    case "--cpp":
+                        cpp = Arrays.asList(args[i + 1].split(","));
+                        break;
+                    case "--threshold":
+                        threshold = Double.parseDouble(args[i + 1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+
+            Results baselineResults = parse(baseline);
+            Results cppResults = parse(cpp);
+
+            if (!runs.isEmpty()) {
+                Results newResults = parse(runs);
+                printRegressions(baselineResults, newResults, threshold);
+                printRatios(newResults, cppResults);
+            } else {
+                printRatios(baselineResults, cppResults);
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public static Results parse(List<String> files) throws IOException {
+        Results results = new Results();
+        for (String file : files)
+            parse(Paths.get(file), results);
+        return results;
+    }
+
+    public static void parse(Path file, Results results) throws IOException {
+        List<String> lines = Files.readAllLines(file);
+        if (!lines.isEmpty() && lines.get(0).startsWith("kernel,n,threads,reps,")) {
+            parseCsv(lines, results);
+            return;
+        }
+
+        String section = null, qualifier = null;
+        int n = -1;
+
+        for (String raw : lines) {
+            String line = raw.trim();
+            Matcher matcher;
+
+            if ((matcher = SECTION.matcher(line)).matches()) {
+                section = kernelName(matcher.group(1));
+                n = -1;
+                qualifier = null;
+            } else if ((matcher = SIZE.matcher(line)).matches()) {
+                n = Integer.parseInt(matcher.group(1));
+                qualifier = null;
+            } else if ((matcher = QUALIFIER.matcher(line)).matches()) {
+                qualifier = matcher.group(1);
+            } else if ((matcher = TIME.matcher(line)).matches() && section != null && n > 0) {
+                // "0,206" in locales with a decimal comma
+                double seconds = Double.parseDouble(matcher.group(1).replace(',', '.'));
+                results.get(qualifier == null ? section : section + " " + qualifier, n).add(seconds);
+            }
+        }
+    }
+
+    private static void parseCsv(List<String> lines, Results results) {
+        List<String> header = Arrays.asList(lines.get(0).split(","));
+        int kernel = header.indexOf("kernel"), n = header.indexOf("n"), threads = header.indexOf("threads");
+        int reps = header.indexOf("reps"), mean = header.indexOf("mean_s"), stddev = header.indexOf("stddev_s");
+
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split(",");
+            if (fields.length < header.size())
+                continue;
+
+            String name = fields[kernel];
+            if (Integer.parseInt(fields[threads]) > 1)
+                name += " threads=" + fields[threads];
+            results.get(name, Integer.parseInt(fields[n])).add(Long.parseLong(fields[reps]),
+                    Double.parseDouble(fields[mean]), Double.parseDouble(fields[stddev]));
+        }
+    }
+
+    // "Line Multiplication" -> "line", "Regular Multiplication" and "Multiplication" -> "mult",
+    // so the sections of both versions and the batch kernel names line up
+    public static String kernelName(String section) {
+        String name = section.replaceAll("(?i)multiplication", "").trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", "-");
+        return name.isEmpty() || name.equals("regular") ? "mult" : name;
+    }
+
+    private static void printRegressions(Results baseline, Results runs, double threshold) {
+        System.out.println("------Regression Check------");
+        System.out.printf(Locale.ROOT, "%-32s %6s %12s %12s %9s  %s\n", "kernel", "n", "baseline(s)", "new(s)", "change", "verdict");
+
+        int slower = 0, compared = 0;
+        for (Map.Entry<String, TreeMap<Integer, Samples>> kernel : runs.kernels.entrySet()) {
+            for (Map.Entry<Integer, Samples> size : kernel.getValue().entrySet()) {
+                Samples before = baseline.find(kernel.getKey(), size.getKey());
+                if (before == null)
+                    continue;
+
+                Samples after = size.getValue();
+                double change = after.mean() / before.mean() - 1;
+                String verdict;
+
+                if (before.count > 1 && after.count > 1) {
+                    double error = Math.sqrt(before.variance() / before.count + after.variance() / after.count);
+                    double t = error > 0 ? (after.mean() - before.mean()) / error : 0;
+                    boolean significant = error > 0 ? t > criticalT(before, after) : change > 0;
+                    verdict = significant ? String.format(Locale.ROOT, "SLOWER (t=%.2f)", t)
+                            : String.format(Locale.ROOT, "ok (t=%.2f)", t);
+                } else {
+                    verdict = change > threshold ? "SLOWER (single run, above threshold)" : "ok (single run)";
+                }
+
+                if (verdict.startsWith("SLOWER"))
+                    slower++;
+                compared++;
+                System.out.printf(Locale.ROOT, "%-32s %6d %12.3f %12.3f %+8.1f%%  %s\n",
+                        kernel.getKey(), size.getKey(), before.mean(), after.mean(), 100 * change, verdict);
+            }
+        }
+        System.out.printf("%d of %d results slower\n\n", slower, compared);
+    }
+
+    private static void printRatios(Results java, Results cpp) {
+        System.out.println("------Java vs C++------");
+        System.out.printf(Locale.ROOT, "%-32s %6s %12s %12s %9s\n", "kernel", "n", "java(s)", "c++(s)", "java/c++");
+
+        for (Map.Entry<String, TreeMap<Integer, Samples>> kernel : java.kernels.entrySet()) {
+            for (Map.Entry<Integer, Samples> size : kernel.getValue().entrySet()) {
+                Samples reference = cpp.find(kernel.getKey(), size.getKey());
+                if (reference == null)
+                    continue;
+
+                double javaTime = size.getValue().mean(), cppTime = reference.mean();
+                System.out.printf(Locale.ROOT, "%-32s %6d %12.3f %12.3f %9.2f\n",
+                        kernel.getKey(), size.getKey(), javaTime, cppTime, javaTime / cppTime);
+            }
+        }
+        System.out.println();
+    }
+
+    // Welch-Satterthwaite degrees of freedom
+    private static double criticalT(Samples a, Samples b) {
+        double va = a.variance() / a.count, vb = b.variance() / b.count;
+        double df = (va + vb) * (va + vb) / (va * va / (a.count - 1) + vb * vb / (b.count - 1));
+        int index = (int) Math.floor(df);
+        return index < 1 ? T_CRITICAL[0] : index <= T_CRITICAL.length ? T_CRITICAL[index - 1] : 1.645;
+    }
+}
@@ -0,0 +1,229 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.function.IntConsumer;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Measured ceilings of the host for a roofline model: peak FLOP/s of an FMA loop (scalar and Vector API,
+ * one thread and all processors) and STREAM-style copy and triad bandwidth (one thread and all processors).
+ * The FMA loops run ACCUMULATORS independent chains so the FMA latency is hidden.
+ * The STREAM arrays are four times the last level cache (or a quarter of the heap each, if smaller).
+ * Every measurement is the best of REPS runs, like STREAM reports; on one processor the all-processors
+ * ceilings are the single-thread ones.
+ * A kernel's roof is min(peak, intensity * bandwidth), where the intensity uses the RunMetrics traffic model
+ * of the kernel, with the single-thread vector peak and triad bandwidth for sequential kernels and the
+ * all-processors ones for the parallel kernels.
+ */
+public class Roofline {
+
+    public static final int REPS = 5;
+
+    private static final int ACCUMULATORS = 8;
+    private static final long FMA_ITERATIONS = 1L << 26;
+    private static final VectorSpecies<Double> SPECIES = VectorMultiply.SPECIES;
+
+    public final int threads;
+    public double scalarPeak, vectorPeak, parallelScalarPeak, parallelVectorPeak;  // GFLOP/s
+    public double copyBandwidth, triadBandwidth, parallelCopyBandwidth, parallelTriadBandwidth;  // GB/s
+
+    private Roofline(int threads) {
+        this.threads = threads;
+    }
+
+    public static Roofline measure() {
+        Roofline roofline = new Roofline(Runtime.getRuntime().availableProcessors());
+        int t = roofline.threads;
+
+        // every thread runs the full FMA loop, so the work grows with the threads
+        double scalarFlops = FMA_ITERATIONS * ACCUMULATORS * 2.0, vectorFlops = scalarFlops * SPECIES.length();
+        roofline.scalarPeak = best(1, Roofline::fmaScalar, scalarFlops);
+        roofline.vectorPeak = best(1, Roofline::fmaVector, vectorFlops);
+        roofline.parallelScalarPeak = t > 1 ? best(t, Roofline::fmaScalar, scalarFlops * t) : roofline.scalarPeak;
+        roofline.parallelVectorPeak = t > 1 ? best(t, Roofline::fmaVector, vectorFlops * t) : roofline.vectorPeak;
+
+        long[] caches = BlockTuner.dataCacheSizes();
+        long length = Math.min(4 * caches[caches.length - 1] / Double.BYTES, Runtime.getRuntime().maxMemory() / 4 / Double.BYTES);
+        int size = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1 << 22, length));
+        double[] a = new double[size], b = new double[size], c = new double[size];
+        Arrays.fill(a, 1.0);
+        Arrays.fill(b, 2.0);
+        Arrays.fill(c, 0.5);
+
+        // the arrays are split between the threads, so the traffic is the same for any count
+        roofline.copyBandwidth = best(1, copy(a, c, 1), 2.0 * Double.BYTES * size);
+        roofline.triadBandwidth = best(1, triad(a, b, c, 1), 3.0 * Double.BYTES * size);
+        roofline.parallelCopyBandwidth = t > 1 ? best(t, copy(a, c, t), 2.0 * Double.BYTES * size) : roofline.copyBandwidth;
+        roofline.parallelTriadBandwidth = t > 1 ? best(t, triad(a, b, c, t), 3.0 * Double.BYTES * size) : roofline.triadBandwidth;
+        return roofline;
+    }
+
+    public void print() {
+        System.out.printf("FMA peak, 1 thread: scalar %.2f GFLOP/s, vector (%d lanes) %.2f GFLOP/s\n",
+                scalarPeak, SPECIES.length(), vectorPeak);
+        if (threads > 1)
+            System.out.printf("FMA peak, %d threads: scalar %.2f GFLOP/s, vector %.2f GFLOP/s\n",
+                    threads, parallelScalarPeak, parallelVectorPeak);
+        System.out.printf("Bandwidth, 1 thread: copy %.2f GB/s, triad %.2f GB/s\n", copyBandwidth, triadBandwidth);
+        if (threads > 1)
+            System.out.printf("Bandwidth, %d threads: copy %.2f GB/s, triad %.2f GB/s\n",
+                    threads, parallelCopyBandwidth, parallelTriadBandwidth);
+        System.out.printf("Ridge point: %.2f FLOP/byte (1 thread)\n", vectorPeak / triadBandwidth);
+        if (threads > 1)
+            System.out.printf("Ridge point: %.2f FLOP/byte (%d threads)\n", parallelVectorPeak / parallelTriadBandwidth, threads);
+    }
+
+    // estimated memory traffic of a Kernels.NAMES kernel, from the RunMetrics models
+    public static double traffic(String kernel, int n) {
+        switch (kernel) {
+            case "mult":
+                return RunMetrics.naiveTraffic(n, Double.BYTES);
+            case "block":
+            case "parallel-block":
+                return RunMetrics.blockTraffic(n, BlockTuner.tune(n), Double.BYTES);
+            case "packed":
+                return RunMetrics.blockTraffic(n, PackedGemm.KC, Double.BYTES);
+            case "morton":
+                return RunMetrics.blockTraffic(n, new MortonMatrix(n).leaf, Double.BYTES);
+            case "strassen":
+                return RunMetrics.compulsoryTraffic(n, n, n, Double.BYTES);
+            default:
+                return RunMetrics.lineTraffic(n, Double.BYTES);
+        }
+    }
+
+    public double roof(String kernel, double intensity) {
+        boolean parallel = Kernels.isParallel(kernel);
+        double peak = parallel ? parallelVectorPeak : vectorPeak;
+        double bandwidth = parallel ? parallelTriadBandwidth : triadBandwidth;
+        return Math.min(peak, intensity * bandwidth);
+    }
+
+    // intensity, achieved GFLOP/s and distance to the roof of each (kernel, n) median time
+    public void printKernels(List<BatchRunner.Result> results) {
+        System.out.println("kernel            n  threads  FLOP/byte  GFLOP/s   roof  % of roof  bound");
+        for (BatchRunner.Result result : results) {
+            double intensity = RunMetrics.flops(result.n, result.n, result.n) / traffic(result.kernel, result.n);
+            double roof = roof(result.kernel, intensity);
+            boolean parallel = Kernels.isParallel(result.kernel);
+            double ridge = parallel ? parallelVectorPeak / parallelTriadBandwidth : vectorPeak / triadBandwidth;
+
+            System.out.printf("%-15s %4d  %7d  %9.2f  %7.2f  %5.1f  %8.1f%%  %s\n", result.kernel, result.n, result.threads,
+                    intensity, result.gflops, roof, 100 * result.gflops / roof, intensity < ridge ? "memory" : "compute");
+        }
+    }
+
+    // best rate of REPS runs of part on every thread, amount (all threads) / seconds / 1e9
+    private static double best(int threads, IntConsumer part, double amount) {
+        if (threads == 1) {
+            double best = 0;
+            for (int rep = 0; rep < REPS; rep++) {
+                long time1 = System.nanoTime();
+                part.accept(0);
+                long time2 = System.nanoTime();
+                best = Math.max(best, amount / ((time2 - time1) / 1000000000.0) / 1e9);
+            }
+            return best;
+        }
+
+        // one platform thread per part, so every part really runs on its own processor; the threads are
+        // started once and every run is timed between two barriers, so thread start and join are not timed
+        CyclicBarrier start = new CyclicBarrier(threads + 1), done = new CyclicBarrier(threads + 1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            workers[t] = new Thread(() -> {
+                for (int rep = 0; rep < REPS; rep++) {
+                    await(start);
+                    part.accept(index);
+                    await(done);
+                }
+            }, "roofline-" + t);
+            workers[t].start();
+        }
+
+        double best = 0;
+        try {
+            for (int rep = 0; rep < REPS; rep++) {
+                await(start);
+                long time1 = System.nanoTime();
+                await(done);
+                long time2 = System.nanoTime();
+                best = Math.max(best, amount / ((time2 - time1) / 1000000000.0) / 1e9);
+            }
+            for (Thread worker : workers)
+                worker.join();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        return best;
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (InterruptedException | BrokenBarrierException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // every thread runs the full loop
+    private static void fmaScalar(int part) {
+        double x = 1e-9, y = 1.0 - 1e-9;
+        double a0 = 0, a1 = 1, a2 = 2, a3 = 3, a4 = 4, a5 = 5, a6 = 6, a7 = 7;
+        for (long i = 0; i < FMA_ITERATIONS; i++) {
+            a0 = Math.fma(a0, y, x);
+            a1 = Math.fma(a1, y, x);
+            a2 = Math.fma(a2, y, x);
+            a3 = Math.fma(a3, y, x);
+            a4 = Math.fma(a4, y, x);
+            a5 = Math.fma(a5, y, x);
+            a6 = Math.fma(a6, y, x);
+            a7 = Math.fma(a7, y, x);
+        }
+        sink = a0 + a1 + a2 + a3 + a4 + a5 + a6 + a7;
+    }
+
+    private static void fmaVector(int part) {
+        DoubleVector x = DoubleVector.broadcast(SPECIES, 1e-9), y = DoubleVector.broadcast(SPECIES, 1.0 - 1e-9);
+        DoubleVector a0 = DoubleVector.broadcast(SPECIES, 0), a1 = DoubleVector.broadcast(SPECIES, 1);
+        DoubleVector a2 = DoubleVector.broadcast(SPECIES, 2), a3 = DoubleVector.broadcast(SPECIES, 3);
+        DoubleVector a4 = DoubleVector.broadcast(SPECIES, 4), a5 = DoubleVector.broadcast(SPECIES, 5);
+        DoubleVector a6 = DoubleVector.broadcast(SPECIES, 6), a7 = DoubleVector.broadcast(SPECIES, 7);
+        for (long i = 0; i < FMA_ITERATIONS; i++) {
+            a0 = a0.fma(y, x);
+            a1 = a1.fma(y, x);
+            a2 = a2.fma(y, x);
+            a3 = a3.fma(y, x);
+            a4 = a4.fma(y, x);
+            a5 = a5.fma(y, x);
+            a6 = a6.fma(y, x);
+            a7 = a7.fma(y, x);
+        }
+        sink = a0.add(a1).add(a2).add(a3).add(a4).add(a5).add(a6).add(a7).reduceLanes(VectorOperators.ADD);
+    }
+
+    // c = a, the arrays split into one contiguous range per thread
+    private static IntConsumer copy(double[] a, double[] c, int threads) {
+        return part -> {
+            int from = (int) ((long) a.length * part / threads), to = (int) ((long) a.length * (part + 1) / threads);
+            System.arraycopy(a, from, c, from, to - from);
+        };
+    }
+
+    // a = b + s * c
+    private static IntConsumer triad(double[] a, double[] b, double[] c, int threads) {
+        return part -> {
+            int from = (int) ((long) a.length * part / threads), to = (int) ((long) a.length * (part + 1) / threads);
+            for (int i = from; i < to; i++)
+                a[i] = b[i] + 3.0 * c[i];
+        };
+    }
+
+    // keeps the FMA results alive so the loops are not removed
+    private static volatile double sink;
+}
@@ -0,0 +1,198 @@
+import java.io.IOException;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * JVM activity during a measured region: allocated bytes (all threads), GC collections and time,
+ * and JIT compilation time, read from the management beans before and after the kernel.
+ * The JIT compilations themselves are taken from the JFR jdk.Compilation events of the region, so a jump
+ * in the timings can be matched with the methods compiled (or recompiled, or OSR compiled) while it ran.
+ * The events are recorded from start() and read after stop(), both outside the caller's timer, rather than
+ * streamed: a stream parses them on its own thread while the kernel runs, which disturbs the measurement.
+ * JFR's own compilations are left out. -Dmetrics.jit=false turns the recording off.
+ * print() adds the achieved GFLOP/s and the memory bandwidth for an estimated amount of traffic,
+ * see the *Traffic methods for the models (they are estimates, not measured counters).
+ */
+public class RunMetrics {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final List<GarbageCollectorMXBean> COLLECTORS = ManagementFactory.getGarbageCollectorMXBeans();
+    private static final CompilationMXBean COMPILER = ManagementFactory.getCompilationMXBean();
+    private static final boolean JIT_EVENTS = !"false".equals(System.getProperty("metrics.jit"));
+    private static final int PRINTED_COMPILATIONS = 8;
+
+    // one jdk.Compilation event: the compiled method, its tier, whether it was an OSR compilation
+    public record Compilation(String method, int level, boolean osr, double millis) {}
+
+    private long nanos, allocated, gcCount, gcMillis, jitMillis;
+    private Recording recording;
+    private Instant regionStart, regionEnd;
+    private final List<Compilation> compilations = new ArrayList<>();
+
+    public static RunMetrics start() {
+        RunMetrics metrics = new RunMetrics();
+        if (JIT_EVENTS)
+            metrics.startRecording();
+        metrics.regionStart = Instant.now();
+        metrics.allocated = -THREADS.getTotalThreadAllocatedBytes();
+        metrics.gcCount = -totalGcCount();
+        metrics.gcMillis = -totalGcMillis();
+        metrics.jitMillis = -totalJitMillis();
+        metrics.nanos = -System.nanoTime();
+        return metrics;
+    }
+
+    public void stop() {
+        nanos += System.nanoTime();
+        allocated += THREADS.getTotalThreadAllocatedBytes();
+        gcCount += totalGcCount();
+        gcMillis += totalGcMillis();
+        jitMillis += totalJitMillis();
+
+        if (recording != null) {
+            regionEnd = Instant.now();
+            readCompilations();
+        }
+    }
+
+    private void startRecording() {
+        try {
+            recording = new Recording();
+            recording.enable("jdk.Compilation").withThreshold(Duration.ZERO);
+            recording.start();
+        } catch (RuntimeException | Error e) {
+            System.out.println("JIT events unavailable: " + e.getMessage());
+            recording = null;
+        }
+    }
+
+    // compilations that started inside the measured region
+    private void readCompilations() {
+        Path file = null;
+        try {
+            recording.stop();
+            file = Files.createTempFile("runmetrics", ".jfr");
+            recording.dump(file);
+
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getStartTime().isBefore(regionStart) || event.getStartTime().isAfter(regionEnd))
+                    continue;
+                RecordedMethod method = event.getValue("method");
+                String name = method == null ? "?" : method.getType().getName() + "." + method.getName();
+                if (name.startsWith("jdk.jfr."))
+                    continue;
+                compilations.add(new Compilation(name, event.getShort("compileLevel"), event.getBoolean("isOsr"),
+                        event.getDuration().toNanos() / 1e6));
+            }
+        } catch (IOException e) {
+            System.out.println("JIT events unavailable: " + e.getMessage());
+        } finally {
+            recording.close();
+            recording = null;
+            if (file != null)
+                file.toFile().delete();
+        }
+    }
+
+    public double seconds() {
+        return nanos / 1000000000.0;
+    }
+
+    public long allocatedBytes() {
+        return allocated;
+    }
+
+    public long gcCount() {
+        return gcCount;
+    }
+
+    public long gcMillis() {
+        return gcMillis;
+    }
+
+    public long jitMillis() {
+        return jitMillis;
+    }
+
+    public List<Compilation> compilations() {
+        return compilations;
+    }
+
+    public double gflops(double flops) {
+        return flops / seconds() / 1e9;
+    }
+
+    public double bandwidth(double bytes) {
+        return bytes / seconds() / 1e9;
+    }
+
+    public void print(double flops, double bytes) {
+        System.out.printf("GFLOP/s: %.2f, est. bandwidth: %.2f GB/s\n", gflops(flops), bandwidth(bytes));
+        System.out.printf("Allocated: %.1f MB, GC: %d collections (%d ms), JIT: %d ms\n",
+                allocated / 1e6, gcCount, gcMillis, jitMillis);
+        if (regionEnd == null)
+            return;
+
+        System.out.printf("JIT compilations: %d\n", compilations.size());
+        compilations.stream()
+                .sorted(Comparator.comparingDouble(Compilation::millis).reversed())
+                .limit(PRINTED_COMPILATIONS)
+                .forEach(c -> System.out.printf("  %s tier %d%s %.2f ms\n", c.method(), c.level(), c.osr() ? " OSR" : "", c.millis()));
+    }
+
+    public static double flops(int m, int n, int k) {
+        return 2.0 * m * n * k;
+    }
+
+    // i-j-k order: every B element comes from memory, A and C rows stay cached
+    public static double naiveTraffic(int n, int elementBytes) {
+        return ((double) n * n * n + 2.0 * n * n) * elementBytes;
+    }
+
+    // i-k-j order: a row of B is streamed for every (i, k), the row of C stays cached
+    public static double lineTraffic(int n, int elementBytes) {
+        return ((double) n * n * n + 3.0 * n * n) * elementBytes;
+    }
+
+    // blocked: A and B are re-read once per block column/row of C, C once per k block
+    public static double blockTraffic(int n, int blockSize, int elementBytes) {
+        return (2.0 * n * n * n / blockSize + (double) n * n * Math.ceil((double) n / blockSize)) * elementBytes;
+    }
+
+    // every matrix read or written exactly once
+    public static double compulsoryTraffic(int m, int n, int k, int elementBytes) {
+        return ((double) m * k + (double) k * n + 2.0 * m * n) * elementBytes;
+    }
+
+    private static long totalGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : COLLECTORS)
+            count += Math.max(0, collector.getCollectionCount());
+        return count;
+    }
+
+    private static long totalGcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : COLLECTORS)
+            millis += Math.max(0, collector.getCollectionTime());
+        return millis;
+    }
+
+    private static long totalJitMillis() {
+        return COMPILER != null && COMPILER.isCompilationTimeMonitoringSupported() ? COMPILER.getTotalCompilationTime() : 0;
+    }
+}
@@ -0,0 +1,206 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Sparse matrix in CSR format: the non-zeros of row i are values[rowPtr[i] .. rowPtr[i+1])
+ * with their columns in colIdx, sorted by column.
+ * The CSC format of a matrix is the CSR format of its transpose, see toCSC(); timesCSC() multiplies a dense
+ * matrix by a matrix in that format.
+ */
+public class SparseMatrix {
+
+    public final int rows, cols;
+    public final int[] rowPtr;
+    public final int[] colIdx;
+    public final double[] values;
+
+    public SparseMatrix(int rows, int cols, int[] rowPtr, int[] colIdx, double[] values) {
+        this.rows = rows;
+        this.cols = cols;
+        this.rowPtr = rowPtr;
+        this.colIdx = colIdx;
+        this.values = values;
+    }
+
+    public int nonZeros() {
+        return rowPtr[rows];
+    }
+
+    // bytes used by the three CSR arrays
+    public long memoryBytes() {
+        return (long) rowPtr.length * Integer.BYTES + (long) colIdx.length * Integer.BYTES
+                + (long) values.length * Double.BYTES;
+    }
+
+    // rows x cols matrix where every element is non-zero with probability density, values in [1, 2)
+    public static SparseMatrix random(int rows, int cols, double density, Random random) {
+        int[] rowPtr = new int[rows + 1];
+        int estimate = (int) Math.min(Integer.MAX_VALUE - 8, (double) rows * cols * density * 1.1);
+        int[] colIdx = new int[Math.max(16, estimate)];
+        double[] values = new double[colIdx.length];
+        int nnz = 0;
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (random.nextDouble() >= density)
+                    continue;
+
+                if (nnz == colIdx.length) {
+                    colIdx = Arrays.copyOf(colIdx, colIdx.length * 2);
+                    values = Arrays.copyOf(values, values.length * 2);
+                }
+                colIdx[nnz] = j;
+                values[nnz] = 1.0 + random.nextDouble();
+                nnz++;
+            }
+            rowPtr[i + 1] = nnz;
+        }
+
+        return new SparseMatrix(rows, cols, rowPtr, Arrays.copyOf(colIdx, nnz), Arrays.copyOf(values, nnz));
+    }
+
+    public static SparseMatrix fromDense(double[] dense, int rows, int cols) {
+        int nnz = 0;
+        for (double value : dense)
+            if (value != 0)
+                nnz++;
+
+        int[] rowPtr = new int[rows + 1];
+        int[] colIdx = new int[nnz];
+        double[] values = new double[nnz];
+        int next = 0;
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                double value = dense[i * cols + j];
+                if (value != 0) {
+                    colIdx[next] = j;
+                    values[next] = value;
+                    next++;
+                }
+            }
+            rowPtr[i + 1] = next;
+        }
+
+        return new SparseMatrix(rows, cols, rowPtr, colIdx, values);
+    }
+
+    public double[] toDense() {
+        double[] dense = new double[rows * cols];
+        for (int i = 0; i < rows; i++)
+            for (int p = rowPtr[i]; p < rowPtr[i + 1]; p++)
+                dense[i * cols + colIdx[p]] = values[p];
+        return dense;
+    }
+
+    // CSR of the transpose, i.e. this matrix in CSC format (counting sort by column)
+    public SparseMatrix toCSC() {
+        int nnz = nonZeros();
+        int[] colPtr = new int[cols + 1];
+        int[] rowIdx = new int[nnz];
+        double[] cscValues = new double[nnz];
+
+        for (int p = 0; p < nnz; p++)
+            colPtr[colIdx[p] + 1]++;
+        for (int j = 0; j < cols; j++)
+            colPtr[j + 1] += colPtr[j];
+
+        int[] next = Arrays.copyOf(colPtr, cols);
+        for (int i = 0; i < rows; i++) {
+            for (int p = rowPtr[i]; p < rowPtr[i + 1]; p++) {
+                int q = next[colIdx[p]]++;
+                rowIdx[q] = i;
+                cscValues[q] = values[p];
+            }
+        }
+
+        return new SparseMatrix(cols, rows, colPtr, rowIdx, cscValues);
+    }
+
+    // phc += pha * B for this = B.toCSC(), pha dense row-major with aRows rows: every element of C is a row
+    // of A, which stays in cache, gathered at the non-zeros of a column of B
+    public void timesCSC(double[] pha, int aRows, double[] phc) {
+        int bCols = rows, aCols = cols;
+        for (int i = 0; i < aRows; i++) {
+            int rowA = i * aCols, rowC = i * bCols;
+            for (int j = 0; j < bCols; j++) {
+                double sum = 0;
+                for (int p = rowPtr[j]; p < rowPtr[j + 1]; p++)
+                    sum += pha[rowA + colIdx[p]] * values[p];
+                phc[rowC + j] += sum;
+            }
+        }
+    }
+
+    // phc += this * phb, phb dense row-major with bCols columns
+    public void multiplyDense(double[] phb, int bCols, double[] phc) {
+        for (int i = 0; i < rows; i++) {
+            int rowC = i * bCols;
+            for (int p = rowPtr[i]; p < rowPtr[i + 1]; p++) {
+                double a = values[p];
+                int rowB = colIdx[p] * bCols;
+                for (int j = 0; j < bCols; j++) {
+                    phc[rowC + j] += a * phb[rowB + j];
+                }
+            }
+        }
+    }
+
+    // number of multiply-adds done by multiply(b)
+    public long multiplyCount(SparseMatrix b) {
+        long count = 0;
+        for (int p = 0; p < nonZeros(); p++)
+            count += b.rowPtr[colIdx[p] + 1] - b.rowPtr[colIdx[p]];
+        return count;
+    }
+
+    // this * b with Gustavson's row-by-row algorithm and a dense accumulator per row
+    public SparseMatrix multiply(SparseMatrix b) {
+        if (cols != b.rows)
+            throw new IllegalArgumentException("Dimensions do not match: " + cols + " != " + b.rows);
+
+        double[] accumulator = new double[b.cols];
+        int[] marker = new int[b.cols];
+        int[] touched = new int[b.cols];
+        Arrays.fill(marker, -1);
+
+        int[] cRowPtr = new int[rows + 1];
+        int[] cColIdx = new int[Math.max(16, nonZeros() + b.nonZeros())];
+        double[] cValues = new double[cColIdx.length];
+        int nnz = 0;
+
+        for (int i = 0; i < rows; i++) {
+            int count = 0;
+
+            for (int p = rowPtr[i]; p < rowPtr[i + 1]; p++) {
+                double a = values[p];
+                int k = colIdx[p];
+                for (int q = b.rowPtr[k]; q < b.rowPtr[k + 1]; q++) {
+                    int j = b.colIdx[q];
+                    if (marker[j] != i) {
+                        marker[j] = i;
+                        accumulator[j] = 0;
+                        touched[count++] = j;
+                    }
+                    accumulator[j] += a * b.values[q];
+                }
+            }
+
+            if (nnz + count > cColIdx.length) {
+                int capacity = Math.max(nnz + count, cColIdx.length * 2);
+                cColIdx = Arrays.copyOf(cColIdx, capacity);
+                cValues = Arrays.copyOf(cValues, capacity);
+            }
+
+            Arrays.sort(touched, 0, count);
+            for (int t = 0; t < count; t++) {
+                cColIdx[nnz] = touched[t];
+                cValues[nnz] = accumulator[touched[t]];
+                nnz++;
+            }
+            cRowPtr[i + 1] = nnz;
+        }
+
+        return new SparseMatrix(rows, b.cols, cRowPtr, Arrays.copyOf(cColIdx, nnz), Arrays.copyOf(cValues, nnz));
+    }
+}
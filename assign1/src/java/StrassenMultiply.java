@@ -0,0 +1,200 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Strassen-Winograd multiplication (7 products, 15 additions per level).
+ * n is padded with zeros up to leaf * 2^levels, where leaf <= cutoff, and the recursion stops at the
+ * leaf size, where the vector line kernel takes over. All buffers (padded copies, two temporaries per
+ * level and the leaf buffers) are allocated in the constructor, so multiply() allocates nothing.
+ * Submatrices are views (offset, leading dimension) into the level buffers.
+ */
+public class StrassenMultiply {
+
+    private static final int TUNE_SIZE = 1024;
+    private static final int TUNE_REPS = 2;
+
+    private static final Map<Integer, Integer> tuned = new HashMap<>();
+
+    private final int n, size, leaf, levels;
+
+    // padded operands, only used when size != n
+    private final double[] pa, pb, pc;
+
+    // temporaries X and Y of the Winograd schedule for every level
+    private final double[][] x, y;
+
+    // contiguous leaf operands for the base kernel
+    private final double[] la, lb, lc;
+
+    public StrassenMultiply(int n, int cutoff) {
+        int levels = 0;
+        while ((n + (1 << levels) - 1) >> levels > cutoff)
+            levels++;
+
+        this.n = n;
+        this.levels = levels;
+        this.leaf = (n + (1 << levels) - 1) >> levels;
+        this.size = leaf << levels;
+
+        boolean padded = size != n;
+        this.pa = padded ? new double[size * size] : null;
+        this.pb = padded ? new double[size * size] : null;
+        this.pc = padded ? new double[size * size] : null;
+
+        this.x = new double[levels][];
+        this.y = new double[levels][];
+        for (int level = 0; level < levels; level++) {
+            int half = size >> (level + 1);
+            x[level] = new double[half * half];
+            y[level] = new double[half * half];
+        }
+
+        this.la = new double[leaf * leaf];
+        this.lb = new double[leaf * leaf];
+        this.lc = new double[leaf * leaf];
+    }
+
+    public int paddedSize() {
+        return size;
+    }
+
+    public int levels() {
+        return levels;
+    }
+
+    // phc = pha * phb for n x n matrices (phc is overwritten)
+    public void multiply(double[] pha, double[] phb, double[] phc) {
+        if (size == n) {
+            multiply(pha, 0, size, phb, 0, size, phc, 0, size, 0);
+            return;
+        }
+
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(pha, i * n, pa, i * size, n);
+            System.arraycopy(phb, i * n, pb, i * size, n);
+        }
+
+        multiply(pa, 0, size, pb, 0, size, pc, 0, size, 0);
+
+        for (int i = 0; i < n; i++)
+            System.arraycopy(pc, i * size, phc, i * n, n);
+    }
+
+    // C = A * B for the (size >> level) square views, using the schedule with two temporaries
+    private void multiply(double[] a, int ao, int lda, double[] b, int bo, int ldb,
+                          double[] c, int co, int ldc, int level) {
+        if (level == levels) {
+            leafMultiply(a, ao, lda, b, bo, ldb, c, co, ldc);
+            return;
+        }
+
+        int h = size >> (level + 1);
+        double[] xs = x[level], ys = y[level];
+
+        int a11 = ao, a12 = ao + h, a21 = ao + h * lda, a22 = a21 + h;
+        int b11 = bo, b12 = bo + h, b21 = bo + h * ldb, b22 = b21 + h;
+        int c11 = co, c12 = co + h, c21 = co + h * ldc, c22 = c21 + h;
+
+        sub(a, a11, lda, a, a21, lda, xs, 0, h, h);                      // S3 = A11 - A21
+        sub(b, b22, ldb, b, b12, ldb, ys, 0, h, h);                      // T3 = B22 - B12
+        multiply(xs, 0, h, ys, 0, h, c, c21, ldc, level + 1);            // P7 = S3 * T3 -> C21
+        add(a, a21, lda, a, a22, lda, xs, 0, h, h);                      // S1 = A21 + A22
+        sub(b, b12, ldb, b, b11, ldb, ys, 0, h, h);                      // T1 = B12 - B11
+        multiply(xs, 0, h, ys, 0, h, c, c22, ldc, level + 1);            // P5 = S1 * T1 -> C22
+        sub(xs, 0, h, a, a11, lda, xs, 0, h, h);                         // S2 = S1 - A11
+        sub(b, b22, ldb, ys, 0, h, ys, 0, h, h);                         // T2 = B22 - T1
+        multiply(xs, 0, h, ys, 0, h, c, c12, ldc, level + 1);            // P6 = S2 * T2 -> C12
+        sub(a, a12, lda, xs, 0, h, xs, 0, h, h);                         // S4 = A12 - S2
+        multiply(xs, 0, h, b, b22, ldb, c, c11, ldc, level + 1);         // P3 = S4 * B22 -> C11
+        multiply(a, a11, lda, b, b11, ldb, xs, 0, h, level + 1);         // P1 = A11 * B11 -> X
+        add(xs, 0, h, c, c12, ldc, c, c12, ldc, h);                      // U2 = P1 + P6 -> C12
+        add(c, c12, ldc, c, c21, ldc, c, c21, ldc, h);                   // U3 = U2 + P7 -> C21
+        add(c, c12, ldc, c, c22, ldc, c, c12, ldc, h);                   // U4 = U2 + P5 -> C12
+        add(c, c21, ldc, c, c22, ldc, c, c22, ldc, h);                   // U7 = U3 + P5 -> C22
+        add(c, c12, ldc, c, c11, ldc, c, c12, ldc, h);                   // U5 = U4 + P3 -> C12
+        sub(ys, 0, h, b, b21, ldb, ys, 0, h, h);                         // T4 = T2 - B21
+        multiply(a, a22, lda, ys, 0, h, c, c11, ldc, level + 1);         // P4 = A22 * T4 -> C11
+        sub(c, c21, ldc, c, c11, ldc, c, c21, ldc, h);                   // U6 = U3 - P4 -> C21
+        multiply(a, a12, lda, b, b21, ldb, c, c11, ldc, level + 1);      // P2 = A12 * B21 -> C11
+        add(xs, 0, h, c, c11, ldc, c, c11, ldc, h);                      // U1 = P1 + P2 -> C11
+    }
+
+    private void leafMultiply(double[] a, int ao, int lda, double[] b, int bo, int ldb,
+                              double[] c, int co, int ldc) {
+        for (int i = 0; i < leaf; i++) {
+            System.arraycopy(a, ao + i * lda, la, i * leaf, leaf);
+            System.arraycopy(b, bo + i * ldb, lb, i * leaf, leaf);
+        }
+        Arrays.fill(lc, 0);
+
+        VectorMultiply.multLine(la, lb, lc, leaf);
+
+        for (int i = 0; i < leaf; i++)
+            System.arraycopy(lc, i * leaf, c, co + i * ldc, leaf);
+    }
+
+    // r = p + q for h x h views (r may alias p or q)
+    private static void add(double[] p, int po, int ldp, double[] q, int qo, int ldq,
+                            double[] r, int ro, int ldr, int h) {
+        for (int i = 0; i < h; i++) {
+            int pi = po + i * ldp, qi = qo + i * ldq, ri = ro + i * ldr;
+            for (int j = 0; j < h; j++)
+                r[ri + j] = p[pi + j] + q[qi + j];
+        }
+    }
+
+    // r = p - q for h x h views (r may alias p or q)
+    private static void sub(double[] p, int po, int ldp, double[] q, int qo, int ldq,
+                            double[] r, int ro, int ldr, int h) {
+        for (int i = 0; i < h; i++) {
+            int pi = po + i * ldp, qi = qo + i * ldq, ri = ro + i * ldr;
+            for (int j = 0; j < h; j++)
+                r[ri + j] = p[pi + j] - q[qi + j];
+        }
+    }
+
+    // fastest cutoff among 64..512, timed like BlockTuner on a matrix of at most TUNE_SIZE
+    public static synchronized int tuneCutoff(int n) {
+        int size = Math.min(n, TUNE_SIZE);
+        Integer cached = tuned.get(size);
+        if (cached != null)
+            return cached;
+
+        double[] pha = new double[size * size];
+        double[] phb = new double[size * size];
+        double[] phc = new double[size * size];
+        matrixproduct.setupMatrices(pha, phb, phc, size);
+
+        int best = 0;
+        double bestTime = Double.MAX_VALUE;
+
+        System.out.printf("Autotuning Strassen cutoff (n=%d)\n", size);
+
+        // untimed run, so the JIT compiles the kernels before the first candidate is measured
+        new StrassenMultiply(size, 64).multiply(pha, phb, phc);
+
+        for (int cutoff = 64; cutoff <= 512; cutoff *= 2) {
+            StrassenMultiply strassen = new StrassenMultiply(size, cutoff);
+
+            double time = Double.MAX_VALUE;
+            for (int rep = 0; rep < TUNE_REPS; rep++) {
+                long time1 = System.nanoTime();
+                strassen.multiply(pha, phb, phc);
+                long time2 = System.nanoTime();
+                time = Math.min(time, (time2 - time1) / 1000000000.0);
+            }
+            System.out.printf("  cutoff=%d (levels=%d, padded=%d): %3.3f seconds\n",
+                    cutoff, strassen.levels(), strassen.paddedSize(), time);
+
+            if (time < bestTime) {
+                bestTime = time;
+                best = cutoff;
+            }
+        }
+        System.out.printf("Best cutoff: %d\n", best);
+
+        tuned.put(size, best);
+        return best;
+    }
+}
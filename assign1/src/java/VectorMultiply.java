@@ -0,0 +1,36 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Line kernel with the inner j loop written with the Vector API:
+ * phc[i][j..j+L) = fma(pha[i][k], phb[k][j..j+L), phc[i][j..j+L)), L = lanes of the preferred species
+ * (4 doubles with AVX2, 8 with AVX-512). The last n % L columns are done by a scalar tail.
+ * Needs --add-modules jdk.incubator.vector at compile and run time.
+ */
+public class VectorMultiply {
+
+    public static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    public static void multLine(double[] pha, double[] phb, double[] phc, int n) {
+        int upperBound = SPECIES.loopBound(n);
+
+        for (int i = 0; i < n; i++) {
+            int rowC = i * n;
+            for (int k = 0; k < n; k++) {
+                double a = pha[rowC + k];
+                int rowB = k * n;
+                DoubleVector va = DoubleVector.broadcast(SPECIES, a);
+
+                int j = 0;
+                for (; j < upperBound; j += SPECIES.length()) {
+                    DoubleVector vb = DoubleVector.fromArray(SPECIES, phb, rowB + j);
+                    DoubleVector vc = DoubleVector.fromArray(SPECIES, phc, rowC + j);
+                    va.fma(vb, vc).intoArray(phc, rowC + j);
+                }
+                for (; j < n; j++) {
+                    phc[rowC + j] = Math.fma(a, phb[rowB + j], phc[rowC + j]);
+                }
+            }
+        }
+    }
+}
@@ -1,21 +1,58 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import java.util.Scanner;
 
 public class matrixproduct{
     public static void main(String[] args) {
-        int op = 1, lin=0, col=0, blockSize = 0;
+        if (args.length > 0) {
+            try {
+                BatchRunner.run(args);
+            } catch (IllegalArgumentException | FileNotFoundException e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+
+        int op = 1, lin=0, col=0, blockSize = 0, threads = 1;
         Scanner sc = new Scanner(System.in);
 
         do{
             System.out.println();
             System.out.println("1. Multiplication");
             System.out.println("2. Line Multiplication");
-            System.out.println("3. Run all stats");
+            System.out.println("3. Block Multiplication");
+            System.out.println("4. Parallel Line Multiplication");
+            System.out.println("5. Parallel Block Multiplication");
+            System.out.println("6. Vector Line Multiplication");
+            System.out.println("7. Off-heap Multiplication");
+            System.out.println("8. Strassen-Winograd Multiplication");
+            System.out.println("9. Sparse Multiplication");
+            System.out.println("10. Packed GEMM Multiplication");
+            System.out.println("11. Distributed Multiplication (local workers)");
+            System.out.println("12. Typed Rectangular Multiplication");
+            System.out.println("13. Morton Multiplication");
+            System.out.println("14. Out-of-core Multiplication");
+            System.out.println("15. Automatic Kernel Selection");
+            System.out.println("16. Batched Small Multiplication");
+            System.out.println("17. Cache Simulation");
+            System.out.println("18. Incremental Update");
+            System.out.println("19. Pipelined Jobs");
+            System.out.println("20. Roofline Calibration");
+            System.out.println("21. Run all stats");
+            System.out.println("22. Run thread scaling stats");
             System.out.printf("Selection?: ");
             op = sc.nextInt();
 
             if (op == 0 ) break;
 
-            if(op != 3){
+            if((op < 16 && op != 12) || (op >= 17 && op <= 19)){
             System.out.printf("Dimensions: lins=cols ? ");
             lin = sc.nextInt();
             col = lin;
@@ -29,7 +66,133 @@ public class matrixproduct{
 				    OnMultLine(lin, col);
                     break;
                 case 3:
-                    runStats();  
+                    System.out.printf("Block Size? (0 = autotune) ");
+                    blockSize = sc.nextInt();
+                    if (blockSize <= 0)
+                        blockSize = BlockTuner.tune(lin);
+                    OnMultBlock(lin, col, blockSize);
+                    break;
+                case 4:
+                    System.out.printf("Threads? ");
+                    threads = sc.nextInt();
+                    OnMultLineParallel(lin, col, threads);
+                    break;
+                case 5:
+                    System.out.printf("Block Size? (0 = autotune) ");
+                    blockSize = sc.nextInt();
+                    if (blockSize <= 0)
+                        blockSize = BlockTuner.tune(lin);
+                    System.out.printf("Threads? ");
+                    threads = sc.nextInt();
+                    OnMultBlockParallel(lin, col, blockSize, threads);
+                    break;
+                case 6:
+                    OnMultLineVector(lin, col);
+                    break;
+                case 7:
+                    System.out.printf("Kernel? (1-6 as above) ");
+                    int kernel = sc.nextInt();
+                    if (kernel == 3 || kernel == 5) {
+                        System.out.printf("Block Size? (0 = autotune) ");
+                        blockSize = sc.nextInt();
+                        if (blockSize <= 0)
+                            blockSize = BlockTuner.tune(lin);
+                    }
+                    if (kernel == 4 || kernel == 5) {
+                        System.out.printf("Threads? ");
+                        threads = sc.nextInt();
+                    }
+                    try (OffHeapMatrix a = new OffHeapMatrix(lin, lin);
+                         OffHeapMatrix b = new OffHeapMatrix(lin, lin);
+                         OffHeapMatrix c = new OffHeapMatrix(lin, lin)) {
+                        OnMultOffHeap(a, b, c, lin, kernel, blockSize, threads);
+                    }
+                    break;
+                case 8:
+                    System.out.printf("Cutoff? (0 = autotune) ");
+                    int cutoff = sc.nextInt();
+                    if (cutoff <= 0)
+                        cutoff = StrassenMultiply.tuneCutoff(lin);
+                    OnMultStrassen(lin, col, cutoff);
+                    break;
+                case 9:
+                    System.out.printf("Density? (0-1) ");
+                    double density = sc.nextDouble();
+                    OnMultSparse(lin, new double[] { density });
+                    break;
+                case 10:
+                    OnMultPacked(lin, col);
+                    break;
+                case 11:
+                    OnMultDistributed(lin);
+                    break;
+                case 12:
+                    System.out.printf("Dimensions: m k n ? ");
+                    int m = sc.nextInt(), k = sc.nextInt(), n = sc.nextInt();
+                    OnMultTyped(m, k, n);
+                    break;
+                case 13:
+                    OnMultMorton(lin, col);
+                    break;
+                case 14:
+                    System.out.printf("Memory budget (MB)? (0 = %d) ", OutOfCoreMultiply.DEFAULT_MEMORY >> 20);
+                    long memory = sc.nextLong() << 20;
+                    if (memory <= 0)
+                        memory = OutOfCoreMultiply.DEFAULT_MEMORY;
+                    System.out.printf("Tile Size? (0 = auto) ");
+                    int tile = sc.nextInt();
+                    if (tile <= 0)
+                        tile = OutOfCoreMultiply.tileSize(lin, memory);
+                    OnMultOutOfCore(lin, tile, memory);
+                    break;
+                case 15:
+                    System.out.printf("Threads? ");
+                    threads = sc.nextInt();
+                    OnMultAuto(lin, threads);
+                    break;
+                case 16:
+                    System.out.printf("Matrix size? (%d-%d) ", BatchedMultiply.MIN_SIZE, BatchedMultiply.MAX_SIZE);
+                    int size = sc.nextInt();
+                    System.out.printf("Batch count? ");
+                    int count = sc.nextInt();
+                    System.out.printf("Threads? ");
+                    threads = sc.nextInt();
+                    OnMultBatched(size, count, threads);
+                    break;
+                case 17:
+                    System.out.printf("Kernel? (1, 2, 3 or 13 as above) ");
+                    int simulated = sc.nextInt();
+                    if (simulated == 3) {
+                        System.out.printf("Block Size? (0 = autotune) ");
+                        blockSize = sc.nextInt();
+                        if (blockSize <= 0)
+                            blockSize = BlockTuner.tune(lin);
+                    }
+                    OnCacheSimulation(lin, simulated, blockSize);
+                    break;
+                case 18:
+                    System.out.printf("Rank of each update? ");
+                    int rank = sc.nextInt();
+                    System.out.printf("Updates? ");
+                    int updates = sc.nextInt();
+                    OnMultIncremental(lin, rank, updates);
+                    break;
+                case 19:
+                    System.out.printf("Jobs? ");
+                    int jobs = sc.nextInt();
+                    System.out.printf("Compute threads? ");
+                    threads = sc.nextInt();
+                    OnMultPipeline(lin, jobs, threads);
+                    break;
+                case 20:
+                    runRooflineStats();
+                    break;
+                case 21:
+                    runStats();
+                    break;
+                case 22:
+                    runThreadStats();
+                    break;
                 default:
                     break;
             }
@@ -37,10 +200,9 @@ public class matrixproduct{
         } while(op != 0);
     }
 
+    // pha is m_ar x m_ar, phb and phc are m_ar x m_br
     public static void OnMult(int m_ar, int m_br){
-        double temp;
-
-        double pha[] = new double[m_ar * m_br];
+        double pha[] = new double[m_ar * m_ar];
         double phb[] = new double[m_ar * m_br];
         double phc[] = new double[m_ar * m_br];
 
@@ -50,22 +212,17 @@ public class matrixproduct{
 
 
 
-        for(int i=0; i<m_br; i++)
+        for(int i=0; i<m_ar; i++)
             for(int j=0; j<m_br; j++)
                 phb[i*m_br + j] = (double)(i+1);
 
+        RunMetrics metrics = RunMetrics.start();
         long time1 = System.nanoTime();
 
-        for(int i = 0; i < m_ar; i++){
-            for(int j = 0; j < m_br; j++){
-                temp = 0;
-                for( int k = 0; k < m_ar; k++){
-                    temp += pha[i * m_ar + k] * phb[k * m_br +j];
-                }
-                phc[i * m_ar + j] = temp;
-            }
-        }
+        MatrixKernel.NAIVE_DOUBLE.multiply(m_ar, m_br, m_ar, pha, phb, phc);
+
         long time2 = System.nanoTime();
+        metrics.stop();
         long duration = time2 - time1;
 
         double seconds = (double)duration / 1000000000.0;
@@ -77,47 +234,43 @@ public class matrixproduct{
      
         for (int i = 0; i < 1; i++) {
             for (int j = 0; j < Math.min(10, m_br); j++) {
-                System.out.print((int)phc[i*m_ar+j] + " ");
+                System.out.print((int)phc[i*m_br+j] + " ");
             }
         }
+        System.out.println();
+        metrics.print(RunMetrics.flops(m_ar, m_br, m_ar), RunMetrics.naiveTraffic(m_ar, Double.BYTES));
+        Freivalds.verify(m_ar, m_br, m_ar, pha, phb, phc).print();
     }
     
+    // pha is m_ar x m_ar, phb and phc are m_ar x m_br
     public static void OnMultLine(int m_ar, int m_br){
         long Time1, Time2;
 
-	double temp;
-	int i, j, k;
+	int i, j;
 
 	double[] pha = new double[m_ar*m_ar];
-	double[] phb = new double[m_ar*m_ar];
-	double[] phc = new double[m_ar*m_ar];
+	double[] phb = new double[m_ar*m_br];
+	double[] phc = new double[m_ar*m_br];
 
 		for(i=0; i<m_ar; i++)
 			for(j=0; j<m_ar; j++)
 				pha[i*m_ar + j] = (double)1.0;
 
-		for(i=0; i<m_br; i++)
+		for(i=0; i<m_ar; i++)
 			for(j=0; j<m_br; j++)
 				phb[i*m_br + j] = (double)(i+1);
 		
 		for(i=0; i<m_ar; i++)
-			for(j=0; j<m_ar; j++)
-				phc[i*m_ar + j] = (double)0;
+			for(j=0; j<m_br; j++)
+				phc[i*m_br + j] = (double)0;
 
+		RunMetrics metrics = RunMetrics.start();
 		Time1 = System.currentTimeMillis();
 
-		for(i=0; i<m_ar; i++)
-		{
-			for( k=0; k<m_ar; k++)
-			{	
-				for(j=0; j<m_br; j++)
-				{
-					phc[i*m_ar+j] += pha[i*m_ar+k] * phb[k*m_br+j];
-				}
-			}
-		}
+		MatrixKernel.LINE_DOUBLE.multiply(m_ar, m_br, m_ar, pha, phb, phc);
 
 		Time2 = System.currentTimeMillis();
+		metrics.stop();
 
 		System.out.printf("Time: %3.3f seconds\n", (double)(Time2-Time1)/1000);
 		
@@ -128,8 +281,735 @@ public class matrixproduct{
 			}
 		}
 		System.out.println();
+		metrics.print(RunMetrics.flops(m_ar, m_br, m_ar), RunMetrics.lineTraffic(m_ar, Double.BYTES));
+		Freivalds.verify(m_ar, m_br, m_ar, pha, phb, phc).print();
+    }
+
+    // naive kernel: phc = pha * phb for square n x n matrices
+    public static void mult(double[] pha, double[] phb, double[] phc, int n){
+        double temp;
+
+        for(int i = 0; i < n; i++){
+            for(int j = 0; j < n; j++){
+                temp = 0;
+                for( int k = 0; k < n; k++){
+                    temp += pha[i * n + k] * phb[k * n + j];
+                }
+                phc[i * n + j] = temp;
+            }
+        }
+    }
+
+    // line x line kernel: phc += pha * phb for square n x n matrices
+    public static void multLine(double[] pha, double[] phb, double[] phc, int n){
+        for(int i = 0; i < n; i++){
+            for(int k = 0; k < n; k++){
+                double a = pha[i * n + k];
+                for(int j = 0; j < n; j++){
+                    phc[i * n + j] += a * phb[k * n + j];
+                }
+            }
+        }
+    }
+
+    public static void OnMultBlock(int m_ar, int m_br, int blockSize){
+        double[] pha = new double[m_ar * m_ar];
+        double[] phb = new double[m_ar * m_ar];
+        double[] phc = new double[m_ar * m_ar];
+
+        setupMatrices(pha, phb, phc, m_ar);
+
+        RunMetrics metrics = RunMetrics.start();
+        long time1 = System.nanoTime();
+
+        multBlock(pha, phb, phc, m_ar, blockSize);
+
+        long time2 = System.nanoTime();
+        metrics.stop();
+
+        printResult((double)(time2 - time1) / 1000000000.0, phc, m_br);
+        Freivalds.verify(m_ar, m_ar, m_ar, pha, phb, phc).print();
+        metrics.print(RunMetrics.flops(m_ar, m_ar, m_ar), RunMetrics.blockTraffic(m_ar, blockSize, Double.BYTES));
+    }
+
+    public static void OnMultLineParallel(int m_ar, int m_br, int threads){
+        double[] pha = new double[m_ar * m_ar];
+        double[] phb = new double[m_ar * m_ar];
+        double[] phc = new double[m_ar * m_ar];
+
+        setupMatrices(pha, phb, phc, m_ar);
+        ParallelMultiply.pool(threads);
+
+        RunMetrics metrics = RunMetrics.start();
+        long time1 = System.nanoTime();
+
+        ParallelMultiply.multLine(pha, phb, phc, m_ar, threads);
+
+        long time2 = System.nanoTime();
+        metrics.stop();
+
+        printResult((double)(time2 - time1) / 1000000000.0, phc, m_br);
+        Freivalds.verify(m_ar, m_ar, m_ar, pha, phb, phc).print();
+        metrics.print(RunMetrics.flops(m_ar, m_ar, m_ar), RunMetrics.lineTraffic(m_ar, Double.BYTES));
+    }
+
+    public static void OnMultBlockParallel(int m_ar, int m_br, int blockSize, int threads){
+        double[] pha = new double[m_ar * m_ar];
+        double[] phb = new double[m_ar * m_ar];
+        double[] phc = new double[m_ar * m_ar];
+
+        setupMatrices(pha, phb, phc, m_ar);
+        ParallelMultiply.pool(threads);
+
+        RunMetrics metrics = RunMetrics.start();
+        long time1 = System.nanoTime();
+
+        ParallelMultiply.multBlock(pha, phb, phc, m_ar, blockSize, threads);
+
+        long time2 = System.nanoTime();
+        metrics.stop();
+
+        printResult((double)(time2 - time1) / 1000000000.0, phc, m_br);
+        Freivalds.verify(m_ar, m_ar, m_ar, pha, phb, phc).print();
+        metrics.print(RunMetrics.flops(m_ar, m_ar, m_ar), RunMetrics.blockTraffic(m_ar, blockSize, Double.BYTES));
+    }
+
+    // times the Vector API kernel and the scalar line kernel on the same inputs
+    public static void OnMultLineVector(int m_ar, int m_br){
+        double[] pha = new double[m_ar * m_ar];
+        double[] phb = new double[m_ar * m_ar];
+        double[] phc = new double[m_ar * m_ar];
+
+        setupMatrices(pha, phb, phc, m_ar);
+
+        long time1 = System.nanoTime();
+
+        multLine(pha, phb, phc, m_ar);
+
+        long time2 = System.nanoTime();
+
+        double scalar = (double)(time2 - time1) / 1000000000.0;
+
+        setupMatrices(pha, phb, phc, m_ar);
+
+        RunMetrics metrics = RunMetrics.start();
+        time1 = System.nanoTime();
+
+        VectorMultiply.multLine(pha, phb, phc, m_ar);
+
+        time2 = System.nanoTime();
+        metrics.stop();
+
+        double vector = (double)(time2 - time1) / 1000000000.0;
+
+        System.out.printf("Species: %s\n", VectorMultiply.SPECIES);
+        printResult(vector, phc, m_br);
+        Freivalds.verify(m_ar, m_ar, m_ar, pha, phb, phc).print();
+        metrics.print(RunMetrics.flops(m_ar, m_ar, m_ar), RunMetrics.lineTraffic(m_ar, Double.BYTES));
+        System.out.printf("Scalar line time: %3.3f seconds\n", scalar);
+        System.out.printf("Speedup over line: %.2fx\n", scalar / vector);
+    }
+
+    // runs menu kernel 1-6 on off-heap matrices, which may be larger than n x n so they can be reused
+    public static void OnMultOffHeap(OffHeapMatrix a, OffHeapMatrix b, OffHeapMatrix c, int n, int kernel, int blockSize, int threads){
+        OffHeapMultiply.setupMatrices(a, b, c, n);
+
+        RunMetrics metrics = RunMetrics.start();
+        long time1 = System.nanoTime();
+
+        switch (kernel) {
+            case 1:
+                OffHeapMultiply.mult(a, b, c, n);
+                break;
+            case 2:
+                OffHeapMultiply.multLine(a, b, c, n);
+                break;
+            case 3:
+                OffHeapMultiply.multBlock(a, b, c, n, blockSize);
+                break;
+            case 4:
+                OffHeapMultiply.multLineParallel(a, b, c, n, threads);
+                break;
+            case 5:
+                OffHeapMultiply.multBlockParallel(a, b, c, n, blockSize, threads);
+                break;
+            case 6:
+                OffHeapMultiply.multLineVector(a, b, c, n);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown kernel: " + kernel);
+        }
+
+        long time2 = System.nanoTime();
+        metrics.stop();
+
+        System.out.printf("Time: %3.3f seconds\n", (double)(time2 - time1) / 1000000000.0);
+
+        System.out.println("Result matrix: ");
+        for (int j = 0; j < Math.min(10, n); j++) {
+            System.out.print(c.get(j) + " ");
+        }
+        System.out.println();
+
+        double traffic = kernel == 1 ? RunMetrics.naiveTraffic(n, Double.BYTES)
+                : kernel == 3 || kernel == 5 ? RunMetrics.blockTraffic(n, blockSize, Double.BYTES)
+                : RunMetrics.lineTraffic(n, Double.BYTES);
+        metrics.print(RunMetrics.flops(n, n, n), traffic);
+        Freivalds.verify(a, b, c, n).print();
+    }
+
+    // times Strassen-Winograd and reports the max error against the line kernel
+    public static void OnMultStrassen(int m_ar, int m_br, int cutoff){
+        double[] pha = new double[m_ar * m_ar];
+        double[] phb = new double[m_ar * m_ar];
+        double[] phc = new double[m_ar * m_ar];
+        double[] ref = new double[m_ar * m_ar];
+
+        setupMatrices(pha, phb, phc, m_ar);
+        StrassenMultiply strassen = new StrassenMultiply(m_ar, cutoff);
+
+        RunMetrics metrics = RunMetrics.start();
+        long time1 = System.nanoTime();
+
+        strassen.multiply(pha, phb, phc);
+
+        long time2 = System.nanoTime();
+        metrics.stop();
+
+        System.out.printf("cutoff=%d levels=%d padded=%d\n", cutoff, strassen.levels(), strassen.paddedSize());
+        printResult((double)(time2 - time1) / 1000000000.0, phc, m_br);
+        Freivalds.verify(m_ar, m_ar, m_ar, pha, phb, phc).print();
+        metrics.print(RunMetrics.flops(m_ar, m_ar, m_ar), RunMetrics.compulsoryTraffic(m_ar, m_ar, m_ar, Double.BYTES));
+
+        multLine(pha, phb, ref, m_ar);
+
+        double maxError = 0;
+        for (int i = 0; i < m_ar * m_ar; i++)
+            maxError = Math.max(maxError, Math.abs(phc[i] - ref[i]));
+        System.out.printf("Max error vs line: %e\n", maxError);
+    }
+
+    // random n x n matrices at each density: dense line kernel (timed once) vs sparse x dense vs sparse x sparse
+    // vs dense x sparse with B in CSC
+    public static void OnMultSparse(int n, double[] densities){
+        Random random = new Random(n);
+        double[] phc = new double[n * n];
+        double[] ref = new double[n * n];
+        double lineTime = 0;
+
+        for (int d = 0; d < densities.length; d++) {
+            SparseMatrix a = SparseMatrix.random(n, n, densities[d], random);
+            SparseMatrix b = SparseMatrix.random(n, n, densities[d], random);
+            double[] pha = a.toDense();
+            double[] phb = b.toDense();
+
+            if (d == 0) {
+                long time1 = System.nanoTime();
+                multLine(pha, phb, ref, n);
+                long time2 = System.nanoTime();
+                lineTime = (double)(time2 - time1) / 1000000000.0;
+                System.out.printf("Dense line time: %3.3f seconds\n", lineTime);
+            }
+
+            Arrays.fill(phc, 0);
+            RunMetrics denseMetrics = RunMetrics.start();
+            long time1 = System.nanoTime();
+            a.multiplyDense(phb, n, phc);
+            long time2 = System.nanoTime();
+            denseMetrics.stop();
+            double sparseDense = (double)(time2 - time1) / 1000000000.0;
+
+            RunMetrics sparseMetrics = RunMetrics.start();
+            time1 = System.nanoTime();
+            SparseMatrix c = a.multiply(b);
+            time2 = System.nanoTime();
+            sparseMetrics.stop();
+            double sparseSparse = (double)(time2 - time1) / 1000000000.0;
+
+            // dense A times B in CSC, B converted from its dense form as a caller holding dense data would
+            time1 = System.nanoTime();
+            SparseMatrix bCsc = SparseMatrix.fromDense(phb, n, n).toCSC();
+            time2 = System.nanoTime();
+            double conversion = (double)(time2 - time1) / 1000000000.0;
+            double[] phcCsc = new double[n * n];
+            RunMetrics cscMetrics = RunMetrics.start();
+            time1 = System.nanoTime();
+            bCsc.timesCSC(pha, n, phcCsc);
+            time2 = System.nanoTime();
+            cscMetrics.stop();
+            double denseCsc = (double)(time2 - time1) / 1000000000.0;
+
+            double[] check = d == 0 ? ref : phc;
+            double[] dense = c.toDense();
+            double maxError = 0;
+            for (int i = 0; i < n * n; i++)
+                maxError = Math.max(maxError, Math.abs(dense[i] - check[i]));
+
+            System.out.printf("density=%.4f nnz(A)=%d nnz(C)=%d\n", densities[d], a.nonZeros(), c.nonZeros());
+            System.out.printf("Sparse x dense: %3.3f seconds (%.2fx vs line)\n", sparseDense, lineTime / sparseDense);
+            denseMetrics.print(2.0 * a.nonZeros() * n,
+                    a.memoryBytes() + (double) a.nonZeros() * n * Double.BYTES + 2.0 * n * n * Double.BYTES);
+            Freivalds.verify(n, n, n, pha, phb, phc).print();
+            System.out.printf("Sparse x sparse: %3.3f seconds (%.2fx vs line)\n", sparseSparse, lineTime / sparseSparse);
+            sparseMetrics.print(2.0 * a.multiplyCount(b), a.memoryBytes() + b.memoryBytes() + c.memoryBytes());
+            Freivalds.verify(n, n, n, pha, phb, dense).print();
+            System.out.printf("Dense x sparse (CSC): %3.3f seconds (%.2fx vs line), dense to CSC: %3.3f seconds\n",
+                    denseCsc, lineTime / denseCsc, conversion);
+            cscMetrics.print(2.0 * b.nonZeros() * n, b.memoryBytes() + (double) b.nonZeros() * n * Double.BYTES + 2.0 * n * n * Double.BYTES);
+            Freivalds.verify(n, n, n, pha, phb, phcCsc).print();
+            System.out.printf("Memory: dense %.1f MB, CSR A %.1f MB, CSR C %.1f MB\n",
+                    n * (double) n * Double.BYTES / 1e6, a.memoryBytes() / 1e6, c.memoryBytes() / 1e6);
+            System.out.printf("Max error: %e\n", maxError);
+        }
+    }
+
+    // packed panel kernel, packing and compute time reported separately
+    public static void OnMultPacked(int m_ar, int m_br){
+        double[] pha = new double[m_ar * m_ar];
+        double[] phb = new double[m_ar * m_ar];
+        double[] phc = new double[m_ar * m_ar];
+
+        setupMatrices(pha, phb, phc, m_ar);
+        PackedGemm gemm = new PackedGemm();
+
+        RunMetrics metrics = RunMetrics.start();
+        long time1 = System.nanoTime();
+
+        gemm.multiply(pha, phb, phc, m_ar);
+
+        long time2 = System.nanoTime();
+        metrics.stop();
+
+        double seconds = (double)(time2 - time1) / 1000000000.0;
+        printResult(seconds, phc, m_br);
+        Freivalds.verify(m_ar, m_ar, m_ar, pha, phb, phc).print();
+        System.out.printf("Packing: %3.3f seconds, compute: %3.3f seconds\n", gemm.packSeconds(), gemm.computeSeconds());
+        metrics.print(RunMetrics.flops(m_ar, m_ar, m_ar),
+                RunMetrics.blockTraffic(m_ar, PackedGemm.KC, Double.BYTES));
+    }
+
+    // Cannon's algorithm on 1, 4, 9 and 16 worker JVMs, speedup relative to the single worker
+    public static void OnMultDistributed(int n){
+        double[] pha = new double[n * n];
+        double[] phb = new double[n * n];
+        double[] phc = new double[n * n];
+        double baseline = 0;
+
+        setupMatrices(pha, phb, phc, n);
+
+        for (int q = 1; q <= 4; q++) {
+            DistributedMultiply.Result result;
+            RunMetrics metrics = RunMetrics.start();
+            try {
+                result = DistributedMultiply.run(pha, phb, n, q * q);
+            } catch (IOException | InterruptedException e) {
+                System.out.println("Distributed run failed: " + e.getMessage());
+                return;
+            }
+            metrics.stop();
+
+            if (q == 1)
+                baseline = result.seconds;
+
+            System.out.printf("workers=%d (%dx%d grid)\n", q * q, q, q);
+            printResult(result.seconds, result.phc, n);
+            Freivalds.verify(n, n, n, pha, phb, result.phc).print();
+            System.out.printf("Compute: %3.3f seconds, communication: %3.3f seconds, exposed: %3.3f seconds, overlap: %.1f%%\n",
+                    result.computeSeconds, result.communicationSeconds, result.exposedSeconds, 100 * result.overlap());
+            System.out.printf("Speedup: %.2f\n", baseline / result.seconds);
+            // coordinator JVM only, the workers run in their own processes
+            metrics.print(RunMetrics.flops(n, n, n), RunMetrics.compulsoryTraffic(n, n, n, Double.BYTES));
+        }
+    }
+
+    // line kernel on m x k times k x n matrices in double, float and int precision
+    public static void OnMultTyped(int m, int k, int n){
+        double[] da = new double[m * k], db = new double[k * n], dc = new double[m * n];
+        float[] fa = new float[m * k], fb = new float[k * n], fc = new float[m * n];
+        int[] ia = new int[m * k], ib = new int[k * n], ic = new int[m * n];
+
+        for (int i = 0; i < m * k; i++) {
+            da[i] = 1.0;
+            fa[i] = 1.0f;
+            ia[i] = 1;
+        }
+        for (int i = 0; i < k; i++)
+            for (int j = 0; j < n; j++) {
+                db[i * n + j] = i + 1;
+                fb[i * n + j] = i + 1;
+                ib[i * n + j] = i + 1;
+            }
+
+        System.out.printf("m=%d k=%d n=%d\n", m, k, n);
+
+        RunMetrics metrics = RunMetrics.start();
+        long time1 = System.nanoTime();
+        MatrixKernel.LINE_DOUBLE.multiply(m, n, k, da, db, dc);
+        long time2 = System.nanoTime();
+        metrics.stop();
+        double doubleTime = (double)(time2 - time1) / 1000000000.0;
+        System.out.printf("double: %3.3f seconds, %.1f MB, C[0][0] = %s\n", doubleTime,
+                (m * (double) k + k * (double) n + m * (double) n) * Double.BYTES / 1e6, dc[0]);
+        metrics.print(RunMetrics.flops(m, n, k), ((double) m * k * n + 3.0 * m * n) * Double.BYTES);
+        Freivalds.verify(m, n, k, da, db, dc).print();
+
+        metrics = RunMetrics.start();
+        time1 = System.nanoTime();
+        MatrixKernel.LINE_FLOAT.multiply(m, n, k, fa, fb, fc);
+        time2 = System.nanoTime();
+        metrics.stop();
+        double floatTime = (double)(time2 - time1) / 1000000000.0;
+        System.out.printf("float:  %3.3f seconds, %.1f MB, C[0][0] = %s (%.2fx vs double)\n", floatTime,
+                (m * (double) k + k * (double) n + m * (double) n) * Float.BYTES / 1e6, fc[0], doubleTime / floatTime);
+        metrics.print(RunMetrics.flops(m, n, k), ((double) m * k * n + 3.0 * m * n) * Float.BYTES);
+        Freivalds.verify(m, n, k, fa, fb, fc).print();
+
+        metrics = RunMetrics.start();
+        time1 = System.nanoTime();
+        MatrixKernel.LINE_INT.multiply(m, n, k, ia, ib, ic);
+        time2 = System.nanoTime();
+        metrics.stop();
+        double intTime = (double)(time2 - time1) / 1000000000.0;
+        System.out.printf("int:    %3.3f seconds, %.1f MB, C[0][0] = %s (%.2fx vs double)\n", intTime,
+                (m * (double) k + k * (double) n + m * (double) n) * Integer.BYTES / 1e6, ic[0], doubleTime / intTime);
+        metrics.print(RunMetrics.flops(m, n, k), ((double) m * k * n + 3.0 * m * n) * Integer.BYTES);
+        Freivalds.verify(m, n, k, ia, ib, ic).print();
+    }
+
+    // cache-oblivious Morton kernel, compared with the line kernel and the autotuned block kernel
+    public static void OnMultMorton(int m_ar, int m_br){
+        double[] pha = new double[m_ar * m_ar];
+        double[] phb = new double[m_ar * m_ar];
+        double[] phc = new double[m_ar * m_ar];
+
+        setupMatrices(pha, phb, phc, m_ar);
+
+        long time1 = System.nanoTime();
+        MortonMatrix a = MortonMatrix.fromRowMajor(pha, m_ar);
+        MortonMatrix b = MortonMatrix.fromRowMajor(phb, m_ar);
+        MortonMatrix c = new MortonMatrix(m_ar);
+        long time2 = System.nanoTime();
+        double conversion = (double)(time2 - time1) / 1000000000.0;
+
+        RunMetrics metrics = RunMetrics.start();
+        time1 = System.nanoTime();
+
+        MortonMatrix.multiply(a, b, c);
+
+        time2 = System.nanoTime();
+        metrics.stop();
+        double morton = (double)(time2 - time1) / 1000000000.0;
+
+        time1 = System.nanoTime();
+        c.copyTo(phc);
+        time2 = System.nanoTime();
+        conversion += (double)(time2 - time1) / 1000000000.0;
+
+        System.out.printf("leaf=%d levels=%d padded=%d\n", a.leaf, a.levels, a.size);
+        printResult(morton, phc, m_br);
+        Freivalds.verify(m_ar, m_ar, m_ar, pha, phb, phc).print();
+        System.out.printf("Layout conversion: %3.3f seconds\n", conversion);
+        metrics.print(RunMetrics.flops(m_ar, m_ar, m_ar), RunMetrics.blockTraffic(m_ar, a.leaf, Double.BYTES));
+
+        setupMatrices(pha, phb, phc, m_ar);
+        time1 = System.nanoTime();
+        multLine(pha, phb, phc, m_ar);
+        time2 = System.nanoTime();
+        double line = (double)(time2 - time1) / 1000000000.0;
+
+        int blockSize = BlockTuner.tune(m_ar);
+        setupMatrices(pha, phb, phc, m_ar);
+        time1 = System.nanoTime();
+        multBlock(pha, phb, phc, m_ar, blockSize);
+        time2 = System.nanoTime();
+        double block = (double)(time2 - time1) / 1000000000.0;
+
+        System.out.printf("Line: %3.3f seconds (%.2fx), block %d: %3.3f seconds (%.2fx)\n",
+                line, line / morton, blockSize, block, block / morton);
+    }
+
+    // A, B and C in temporary files (directory from -Dooc.dir), multiplied tile by tile within the memory budget
+    public static void OnMultOutOfCore(int n, int tile, long memory){
+        Path dir = Paths.get(System.getProperty("ooc.dir", System.getProperty("java.io.tmpdir")));
+
+        try (OutOfCoreMatrix a = new OutOfCoreMatrix(Files.createTempFile(dir, "matrix-a", ".bin"), n, tile, true);
+             OutOfCoreMatrix b = new OutOfCoreMatrix(Files.createTempFile(dir, "matrix-b", ".bin"), n, tile, true);
+             OutOfCoreMatrix c = new OutOfCoreMatrix(Files.createTempFile(dir, "matrix-c", ".bin"), n, tile, true)) {
+            a.fill((i, j) -> 1.0);
+            b.fill((i, j) -> i + 1);
+
+            OutOfCoreMultiply multiply = new OutOfCoreMultiply(memory);
+
+            RunMetrics metrics = RunMetrics.start();
+            multiply.multiply(a, b, c);
+            metrics.stop();
+
+            double[] firstRow = new double[Math.min(10, n)];
+            for (int j = 0; j < firstRow.length; j++)
+                firstRow[j] = c.get(0, j);
+
+            System.out.printf("Files: 3 x %.1f MB, memory budget: %d MB\n", a.fileBytes() / 1e6, memory >> 20);
+            printResult(multiply.seconds(), firstRow, firstRow.length);
+            multiply.print(a);
+            metrics.print(RunMetrics.flops(n, n, n), multiply.readBytes() + c.fileBytes());
+            OutOfCoreMultiply.verify(a, b, c).print();
+        } catch (IOException | InterruptedException e) {
+            System.out.println("Out-of-core run failed: " + e.getMessage());
+        }
+    }
+
+    // runs the kernel KernelDispatcher picks from the host profile for n and the thread budget
+    public static void OnMultAuto(int n, int threads){
+        double[] pha = new double[n * n];
+        double[] phb = new double[n * n];
+        double[] phc = new double[n * n];
+
+        KernelDispatcher dispatcher = KernelDispatcher.get();
+        System.out.printf("Kernel: %s (profile %s, n=%d)\n", dispatcher.choose(n, threads), dispatcher.file(),
+                KernelDispatcher.closestSize(n));
+        Runnable multiply = dispatcher.bind(pha, phb, phc, n, threads);
+
+        setupMatrices(pha, phb, phc, n);
+
+        RunMetrics metrics = RunMetrics.start();
+        long time1 = System.nanoTime();
+
+        multiply.run();
+
+        long time2 = System.nanoTime();
+        metrics.stop();
+
+        printResult((double)(time2 - time1) / 1000000000.0, phc, n);
+        metrics.print(RunMetrics.flops(n, n, n), RunMetrics.compulsoryTraffic(n, n, n, Double.BYTES));
+        Freivalds.verify(n, n, n, pha, phb, phc).print();
+    }
+
+    // count size x size products in one buffer, in matrices per second, against one line kernel call
+    // per matrix with fresh arrays (the per-call setup of OnMultLine)
+    public static void OnMultBatched(int size, int count, int threads){
+        int stride = size * size;
+        double[] pha = new double[count * stride];
+        double[] phb = new double[count * stride];
+        double[] phc = new double[count * stride];
+
+        for (int m = 0; m < count; m++)
+            for (int i = 0; i < size; i++)
+                for (int j = 0; j < size; j++) {
+                    pha[m * stride + i * size + j] = 1.0;
+                    phb[m * stride + i * size + j] = i + 1;
+                }
+
+        double batchedTime;
+        try (BatchedMultiply batched = new BatchedMultiply(size, threads)) {
+            // untimed first call, so the size-specific kernel is compiled before it is measured
+            batched.multiply(pha, phb, phc, count);
+
+            RunMetrics metrics = RunMetrics.start();
+            long time1 = System.nanoTime();
+
+            batched.multiply(pha, phb, phc, count);
+
+            long time2 = System.nanoTime();
+            metrics.stop();
+            batchedTime = (double)(time2 - time1) / 1000000000.0;
+
+            System.out.printf("size=%d count=%d threads=%d\n", size, count, batched.threads);
+            printResult(batchedTime, phc, size);
+            System.out.printf("Batched: %.0f matrices/s\n", count / batchedTime);
+            metrics.print(count * RunMetrics.flops(size, size, size), 3.0 * count * stride * Double.BYTES);
+        }
+
+        double checksum = 0;
+        long time1 = System.nanoTime();
+        for (int m = 0; m < count; m++) {
+            double[] a = new double[stride];
+            double[] b = new double[stride];
+            double[] c = new double[stride];
+            setupMatrices(a, b, c, size);
+            MatrixKernel.LINE_DOUBLE.multiply(size, size, size, a, b, c);
+            checksum += c[0];
+        }
+        long time2 = System.nanoTime();
+        double perCallTime = (double)(time2 - time1) / 1000000000.0;
+
+        System.out.printf("Per-call line: %3.3f seconds, %.0f matrices/s (batched %.2fx, checksum %.0f)\n",
+                perCallTime, count / perCallTime, perCallTime / batchedTime, checksum);
+
+        for (int m : new int[] { 0, count - 1 }) {
+            Freivalds.verify(size, size, size, Arrays.copyOfRange(pha, m * stride, (m + 1) * stride),
+                    Arrays.copyOfRange(phb, m * stride, (m + 1) * stride),
+                    Arrays.copyOfRange(phc, m * stride, (m + 1) * stride)).print();
+        }
     }
 
+    // updates of rank k cycling through every IncrementalProduct update, against recomputing with the line kernel
+    public static void OnMultIncremental(int n, int rank, int updates){
+        double[] pha = new double[n * n];
+        double[] phb = new double[n * n];
+        double[] phc = new double[n * n];
+        setupMatrices(pha, phb, phc, n);
+
+        long time1 = System.nanoTime();
+        IncrementalProduct product = new IncrementalProduct(pha, phb, n, 0);
+        long time2 = System.nanoTime();
+        double full = (double)(time2 - time1) / 1000000000.0;
+
+        Random random = new Random(42);
+        int[] indices = new int[rank];
+        double[] u = new double[rank * n];
+        double[] v = new double[rank * n];
+
+        RunMetrics metrics = RunMetrics.start();
+        double seconds = 0;
+        for (int update = 0; update < updates; update++) {
+            for (int t = 0; t < rank; t++)
+                indices[t] = random.nextInt(n);
+            for (int i = 0; i < rank * n; i++) {
+                u[i] = random.nextDouble();
+                v[i] = random.nextDouble();
+            }
+
+            time1 = System.nanoTime();
+            switch (update % 6) {
+                case 0: product.replaceRowsA(indices, u); break;
+                case 1: product.replaceColumnsB(indices, u); break;
+                case 2: product.replaceColumnsA(indices, u); break;
+                case 3: product.replaceRowsB(indices, u); break;
+                case 4: product.rankUpdateA(u, v, rank); break;
+                default: product.rankUpdateB(u, v, rank); break;
+            }
+            time2 = System.nanoTime();
+            seconds += (double)(time2 - time1) / 1000000000.0;
+        }
+        metrics.stop();
+
+        System.out.printf("rank=%d updates=%d full recomputes=%d (refresh every rank %d)\n",
+                rank, updates, product.recomputes() - 1, product.refreshRank);
+        printResult(seconds, product.c(), n);
+        metrics.print(updates * 4.0 * rank * n * n, updates * 3.0 * n * n * Double.BYTES);
+        Freivalds.verify(n, n, n, product.a(), product.b(), product.c()).print();
+
+        // what OnMultLine would spend recomputing after every update
+        time1 = System.nanoTime();
+        MatrixKernel.LINE_DOUBLE.multiply(n, n, n, product.a(), product.b(), phc);
+        time2 = System.nanoTime();
+        double line = (double)(time2 - time1) / 1000000000.0;
+
+        double drift = 0, scale = 0;
+        for (int i = 0; i < n * n; i++) {
+            drift = Math.max(drift, Math.abs(product.c()[i] - phc[i]));
+            scale = Math.max(scale, Math.abs(phc[i]));
+        }
+
+        System.out.printf("Per update: %3.6f seconds, line recompute: %3.3f seconds (%.1fx), initial product %3.3f seconds\n",
+                seconds / updates, line, line * updates / seconds, full);
+        System.out.printf("Drift: max |C - A*B| = %.2e (relative %.2e)\n", drift, drift / scale);
+    }
+
+    // a stream of line kernel jobs one at a time (like calling OnMultLine in a loop), then through JobPipeline
+    public static void OnMultPipeline(int n, int jobs, int threads){
+        double checksum = 0;
+        long time1 = System.nanoTime();
+        for (int id = 0; id < jobs; id++) {
+            JobPipeline.Job job = new JobPipeline.Job(id, n, "line");
+            JobPipeline.load(job);
+            JobPipeline.compute(job);
+            JobPipeline.verify(job);
+            checksum += job.phc[0];
+        }
+        long time2 = System.nanoTime();
+        double sequential = (double)(time2 - time1) / 1000000000.0;
+        System.out.printf("Sequential: %3.3f seconds, %.2f jobs/s (checksum %.0f)\n", sequential, jobs / sequential, checksum);
+
+        int[] failed = new int[1];
+        double[] published = new double[1];
+        RunMetrics metrics = RunMetrics.start();
+        JobPipeline pipeline = new JobPipeline(threads, 2 * threads, job -> {
+            published[0] += job.phc[0];
+            if (!job.check.passed)
+                failed[0]++;
+        });
+        try (pipeline) {
+            for (int id = 0; id < jobs; id++)
+                pipeline.submit(new JobPipeline.Job(id, n, "line"));
+        }
+        metrics.stop();
+
+        System.out.printf("Pipelined: %3.3f seconds, %.2f jobs/s (%.2fx, checksum %.0f, %d failed verification)\n",
+                pipeline.seconds(), pipeline.jobsPerSecond(), sequential / pipeline.seconds(), published[0], failed[0]);
+        pipeline.print();
+        metrics.print(jobs * RunMetrics.flops(n, n, n), jobs * RunMetrics.lineTraffic(n, Double.BYTES));
+    }
+
+    // replays the address stream of kernel 1 (mult), 2 (line), 3 (block) or 13 (Morton) through CacheSimulator
+    public static void OnCacheSimulation(int n, int kernel, int blockSize){
+        CacheSimulator simulator = CacheSimulator.forHost();
+        long time1 = System.nanoTime();
+
+        switch (kernel) {
+            case 1:
+                simulator.replayMult(n, CacheSimulator.sampleRows(n, 2.0 * n * n + n));
+                break;
+            case 2:
+                simulator.replayLine(n, CacheSimulator.sampleRows(n, 2.0 * n * n + n));
+                break;
+            case 3:
+                simulator.replayBlock(n, blockSize, CacheSimulator.sampleRows(n, 2.0 * n * n + n));
+                break;
+            case 13:
+                simulator.replayMorton(n);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown kernel: " + kernel);
+        }
+
+        long time2 = System.nanoTime();
+        System.out.printf("Simulation: %3.3f seconds\n", (double)(time2 - time1) / 1000000000.0);
+        simulator.print();
+    }
+
+    // same initial values as the C++ version: pha = 1, phb row i = i+1, phc = 0
+    public static void setupMatrices(double[] pha, double[] phb, double[] phc, int n){
+        for(int i=0; i<n; i++)
+            for(int j=0; j<n; j++){
+                pha[i*n + j] = 1.0;
+                phb[i*n + j] = (double)(i+1);
+                phc[i*n + j] = (double)0;
+            }
+    }
+
+    // display 10 elements of the result matrix, Freivalds.verify does the actual check
+    public static void printResult(double seconds, double[] phc, int cols){
+        System.out.printf("Time: %3.3f seconds\n", seconds);
+
+        System.out.println("Result matrix: ");
+        for (int j = 0; j < Math.min(10, cols); j++) {
+            System.out.print(phc[j] + " ");
+        }
+        System.out.println();
+    }
+
+    // block x block kernel: phc += pha * phb for square n x n matrices,
+    // blocks at the right/bottom edges are clipped when n % blockSize != 0
+    public static void multBlock(double[] pha, double[] phb, double[] phc, int n, int blockSize){
+        for(int ii = 0; ii < n; ii += blockSize){
+            int iMax = Math.min(ii + blockSize, n);
+            for(int kk = 0; kk < n; kk += blockSize){
+                int kMax = Math.min(kk + blockSize, n);
+                for(int jj = 0; jj < n; jj += blockSize){
+                    int jMax = Math.min(jj + blockSize, n);
+                    for(int i = ii; i < iMax; i++){
+                        for(int k = kk; k < kMax; k++){
+                            double a = pha[i * n + k];
+                            for(int j = jj; j < jMax; j++){
+                                phc[i * n + j] += a * phb[k * n + j];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
 
     public static void runStats(){
         System.out.println("------Regular Multiplication------");
@@ -148,5 +1028,226 @@ public class matrixproduct{
             System.out.println("----\n");    
         }
 
+        System.out.println("------Vector Line Multiplication------");
+
+        for (int n = 600; n <= 3000; n+=400) {
+            System.out.printf("n=%d\n", n);
+            OnMultLineVector(n, n);
+            System.out.println("----\n");
+        }
+
+        System.out.println("------Off-heap Line Multiplication------");
+
+        // allocated once for the largest size and reused for every n
+        try (OffHeapMatrix a = new OffHeapMatrix(3000, 3000);
+             OffHeapMatrix b = new OffHeapMatrix(3000, 3000);
+             OffHeapMatrix c = new OffHeapMatrix(3000, 3000)) {
+            for (int n = 600; n <= 3000; n+=400) {
+                System.out.printf("n=%d\n", n);
+                OnMultOffHeap(a, b, c, n, 2, 0, 1);
+                System.out.println("----\n");
+            }
+        }
+
+        System.out.println("------Strassen-Winograd Multiplication------");
+
+        for (int n = 600; n <= 3000; n+=400) {
+            int cutoff = StrassenMultiply.tuneCutoff(n);
+            System.out.printf("n=%d\n", n);
+            OnMultStrassen(n, n, cutoff);
+            System.out.println("----\n");
+        }
+
+        System.out.println("------Sparse Multiplication------");
+
+        double[] densities = { 0.001, 0.005, 0.01, 0.05, 0.1, 0.2, 0.5 };
+        for (int n = 600; n <= 3000; n+=400) {
+            System.out.printf("n=%d\n", n);
+            OnMultSparse(n, densities);
+            System.out.println("----\n");
+        }
+
+        System.out.println("------Packed GEMM Multiplication------");
+
+        for (int n = 600; n <= 3000; n+=400) {
+            System.out.printf("n=%d\n", n);
+            OnMultPacked(n, n);
+            System.out.println("----\n");
+        }
+
+        System.out.println("------Distributed Multiplication------");
+
+        for (int n = 600; n <= 3000; n+=400) {
+            System.out.printf("n=%d\n", n);
+            OnMultDistributed(n);
+            System.out.println("----\n");
+        }
+
+        System.out.println("------Precision Comparison------");
+
+        for (int n = 600; n <= 3000; n+=400) {
+            OnMultTyped(n, n, n);
+            System.out.println("----\n");
+        }
+
+        System.out.println("------Morton Multiplication------");
+
+        for (int n = 600; n <= 3000; n+=400) {
+            System.out.printf("n=%d\n", n);
+            OnMultMorton(n, n);
+            System.out.println("----\n");
+        }
+
+        System.out.println("------Out-of-core Multiplication------");
+
+        // 32 MB budget, below the size of the matrices from n=1400 on
+        for (int n = 600; n <= 3000; n+=400) {
+            System.out.printf("n=%d\n", n);
+            OnMultOutOfCore(n, OutOfCoreMultiply.tileSize(n, 32L << 20), 32L << 20);
+            System.out.println("----\n");
+        }
+
+        System.out.println("------Automatic Kernel Selection------");
+
+        for (int n = 600; n <= 3000; n+=400) {
+            System.out.printf("n=%d\n", n);
+            OnMultAuto(n, Runtime.getRuntime().availableProcessors());
+            System.out.println("----\n");
+        }
+
+        System.out.println("------Batched Small Multiplication------");
+
+        // 4M doubles per buffer: 262144 4x4 matrices down to 1024 64x64 ones
+        for (int size = 4; size <= 64; size*=2) {
+            System.out.printf("size=%d\n", size);
+            OnMultBatched(size, (1 << 22) / (size * size), Runtime.getRuntime().availableProcessors());
+            System.out.println("----\n");
+        }
+
+        System.out.println("------Cache Simulation------");
+
+        for (int n = 600; n <= 3000; n+=400) {
+            System.out.printf("n=%d\n", n);
+            System.out.println("mult");
+            OnCacheSimulation(n, 1, 0);
+            System.out.println("line");
+            OnCacheSimulation(n, 2, 0);
+            System.out.println("----\n");
+        }
+
+        System.out.println("------Incremental Update------");
+
+        for (int n = 600; n <= 3000; n+=400) {
+            System.out.printf("n=%d\n", n);
+            OnMultIncremental(n, 8, 60);
+            System.out.println("----\n");
+        }
+
+        System.out.println("------Pipelined Jobs------");
+
+        // every job in flight holds its own matrices, so the stream uses the smaller sizes
+        for (int n = 600; n <= 1400; n+=400) {
+            System.out.printf("n=%d\n", n);
+            OnMultPipeline(n, 16, Runtime.getRuntime().availableProcessors());
+            System.out.println("----\n");
+        }
+
+        System.out.println("------Block Multiplication------");
+
+        for (int n = 600; n <= 3000; n+=400) {
+            for (int blockSize = 32; blockSize <= 512; blockSize*=2) {
+                System.out.printf("n=%d\n", n);
+                System.out.printf("blockSize=%d\n", blockSize);
+                OnMultBlock(n, n, blockSize);
+                System.out.println("----\n");
+            }
+
+            int best = BlockTuner.tune(n);
+            System.out.printf("n=%d\n", n);
+            System.out.printf("blockSize=%d (autotuned)\n", best);
+            OnMultBlock(n, n, best);
+            System.out.println("----\n");
+        }
+
+    }
+
+    // measured peak FLOP/s and bandwidth, then every kernel placed against that roofline
+    public static void runRooflineStats(){
+        System.out.println("------Roofline Calibration------");
+
+        Roofline roofline = Roofline.measure();
+        roofline.print();
+        System.out.println("----\n");
+
+        List<String> kernels = Arrays.asList(Kernels.NAMES);
+        List<Integer> threads = Arrays.asList(Runtime.getRuntime().availableProcessors());
+
+        System.out.println("------Roofline------");
+
+        for (int n = 600; n <= 3000; n+=400) {
+            System.out.printf("n=%d\n", n);
+            roofline.printKernels(BatchRunner.sweep(kernels, Arrays.asList(n), threads, 1, 1));
+            System.out.println("----\n");
+        }
+    }
+
+    // speedup and parallel efficiency of the fork/join kernels for 1..N threads
+    public static void runThreadStats(){
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+
+        System.out.println("------Parallel Line Multiplication------");
+
+        for (int n = 600; n <= 3000; n+=400) {
+            System.out.printf("n=%d\n", n);
+            threadSweep(n, maxThreads, 0);
+            System.out.println("----\n");
+        }
+
+        System.out.println("------Parallel Block Multiplication------");
+
+        for (int n = 600; n <= 3000; n+=400) {
+            int blockSize = BlockTuner.tune(n);
+            System.out.printf("n=%d\n", n);
+            System.out.printf("blockSize=%d\n", blockSize);
+            threadSweep(n, maxThreads, blockSize);
+            System.out.println("----\n");
+        }
+    }
+
+    // blockSize == 0 runs the line kernel, otherwise the block kernel
+    private static void threadSweep(int n, int maxThreads, int blockSize){
+        double[] pha = new double[n * n];
+        double[] phb = new double[n * n];
+        double[] phc = new double[n * n];
+        double baseline = 0;
+
+        // untimed run, so the 1 thread baseline is not the cold run that pays for the JIT
+        setupMatrices(pha, phb, phc, n);
+        if (blockSize == 0)
+            ParallelMultiply.multLine(pha, phb, phc, n, 1);
+        else
+            ParallelMultiply.multBlock(pha, phb, phc, n, blockSize, 1);
+
+        System.out.println("threads  time(s)  speedup  efficiency  verified");
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            setupMatrices(pha, phb, phc, n);
+            ParallelMultiply.pool(threads);
+
+            long time1 = System.nanoTime();
+            if (blockSize == 0)
+                ParallelMultiply.multLine(pha, phb, phc, n, threads);
+            else
+                ParallelMultiply.multBlock(pha, phb, phc, n, blockSize, threads);
+            long time2 = System.nanoTime();
+
+            double seconds = (double)(time2 - time1) / 1000000000.0;
+            if (threads == 1)
+                baseline = seconds;
+
+            double speedup = baseline / seconds;
+            Freivalds.Result check = Freivalds.verify(n, n, n, pha, phb, phc);
+            System.out.printf("%7d  %7.3f  %7.2f  %9.1f%%  %8s\n", threads, seconds, speedup, 100.0 * speedup / threads,
+                    check.rounds == 0 ? "-" : check.passed ? "PASS" : "FAIL");
+        }
     }
-}   
+}
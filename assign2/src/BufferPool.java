@@ -0,0 +1,55 @@
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Pool of direct buffers of one size, shared by all the connections and threads.
+ * Sockets read and write direct buffers without the copy the JDK makes for heap buffers, but they are
+ * expensive to allocate, so they are reused: acquire() takes a cleared buffer from the pool or allocates one,
+ * release() gives it back. At most CAPACITY buffers are kept, the others are left to the garbage collector.
+ */
+public class BufferPool {
+
+    private final int size;                   // Size of the buffers in bytes
+    private final int capacity;               // Maximum number of buffers kept
+    private final Queue<ByteBuffer> buffers;
+    private final AtomicInteger pooled;       // Number of buffers in the queue
+
+    public BufferPool(int size, int capacity) {
+        this.size = size;
+        this.capacity = capacity;
+        this.buffers = new ConcurrentLinkedQueue<>();
+        this.pooled = new AtomicInteger();
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /*
+     * Takes a buffer from the pool, allocates one if it is empty
+     * @return Cleared direct buffer of the pool size
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null)
+            return ByteBuffer.allocateDirect(size);
+        pooled.decrementAndGet();
+        return buffer.clear();
+    }
+
+    /*
+     * Gives a buffer back to the pool, it must not be used afterwards
+     * @param buffer: Buffer to give back, buffers of other sizes are dropped
+     */
+    public void release(ByteBuffer buffer) {
+        if (!buffer.isDirect() || buffer.capacity() != size)
+            return;
+        if (pooled.incrementAndGet() > capacity) {
+            pooled.decrementAndGet();
+            return;
+        }
+        buffers.add(buffer);
+    }
+}
@@ -1,7 +1,6 @@
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
@@ -13,6 +12,7 @@ public class Connection {
     private final int port;                                 // The port number
     private final String host;                              // The host name or IP address
     private SocketChannel socket;                           // A SocketChannel for the connection
+    private final FrameBuffer frames = new FrameBuffer();   // Messages read and not handled yet
 
     // Player
     private PlayerMenu playerMenu;                            // A GUI to display messages
@@ -52,24 +52,19 @@ public class Connection {
     }
 
     /*
-     * Send a message to a SocketChannel
+     * Send a message to a SocketChannel, framed with its length
      * @param socket The SocketChannel to send the message to
      * @param message The message to send
      */
     public static void send(SocketChannel socket, String message) throws Exception {
-        ByteBuffer buffer = ByteBuffer.allocate(1024);      // Create a ByteBuffer with a capacity of 1024 bytes
-        buffer.clear();                                     // Clear the buffer
-        buffer.put(message.getBytes());                     // Put the message into the buffer
-        buffer.flip();                                      // Flip the buffer to prepare it for writing
-        while (buffer.hasRemaining()) {                     // Write the buffer to the socket
-            socket.write(buffer);
-        }
+        FrameBuffer.send(socket, message);
     }
 
 
     /*
      * Receive a message from a SocketChannel
      * @param socket The SocketChannel to receive the message from
+     * @param frames The reassembly buffer of the connection, holding the bytes read after the previous message
      * @return The message received from the SocketChannel
      *
      * Receive a message from a SocketChannel
@@ -81,10 +76,11 @@ public class Connection {
      * - AUTH: Authentication success. Receive session token value
      * - END: End of the connection
      */
-    public static String receive(SocketChannel socket) throws Exception {
-        ByteBuffer buffer = ByteBuffer.allocate(1024);          // Create a ByteBuffer with a capacity of 1024 bytes
-        int bytesRead = socket.read(buffer);                    // Read from the socket into the buffer
-        return new String(buffer.array(), 0, bytesRead); // Convert the bytes in the buffer to a String and return it
+    public static String receive(SocketChannel socket, FrameBuffer frames) throws Exception {
+        String message = frames.receive(socket);               // Read until a whole message arrived
+        if (message == null)
+            throw new IOException("Connection closed by the server");
+        return message;
     }
 
     /*
@@ -159,7 +155,7 @@ public class Connection {
         boolean invalidToken = false;
 
         do {
-            serverAnswer = Connection.receive(socket).split("\n");
+            serverAnswer = Connection.receive(socket, frames).split("\n");
             requestType = serverAnswer[0].toUpperCase();
 
             switch (requestType) {
@@ -181,7 +177,7 @@ public class Connection {
                     else {
                         Connection.send(socket, credentials[0].toLowerCase());
 
-                        serverAnswer = Connection.receive(socket).split("\n");
+                        serverAnswer = Connection.receive(socket, frames).split("\n");
                         requestType = serverAnswer[0].toUpperCase(); // It is going to be PSW
 
                         if (!requestType.equals("END")) {
@@ -253,6 +249,15 @@ public class Connection {
         long lastTime = System.currentTimeMillis();
 
         while (true) {
+            // Messages that arrived with the previous ones are handled before waiting for more
+            String message;
+            while ((message = frames.next()) != null) {
+                if (!this.handleServerMessage(message.split("\n"))) {
+                    selector.close();
+                    return;
+                }
+            }
+
             if (selector.select(TIMEOUT) == 0 && System.currentTimeMillis() - lastTime > TIMEOUT) {
                 System.out.println("Server is not responding. Closing connection...");
                 break;
@@ -260,38 +265,50 @@ public class Connection {
             lastTime = System.currentTimeMillis();
             selector.selectedKeys().clear();
 
-            String[] serverAnswer = Connection.receive(socket).split("\n");
-            String requestType = serverAnswer[0].toUpperCase();
-
-            switch (requestType) {
-                case "QUEUE": // Display the queue menu
-                    Connection.send(socket, "ACK");
-                    queueMenu(serverAnswer[1]);
-                    break;
-                case "END": // Close the connection
-                    Connection.send(socket, "ACK");
-                    return;
-                case "INFO": // Display the game information
-                case "QUESTION": // Update the question
-                case "SCORE": // Update the score
-                    gameMenu(serverAnswer, requestType);
-                    Connection.send(socket, "ACK");
-                    break;
-                case "TURN": // Send the player's turn
-                    Connection.send(socket, this.playerMenu.turn());
-                    break;
-                case "GAMEOVER": // Display the game over message
-                    Connection.send(socket, this.playerMenu.gameOver(serverAnswer[1]));
-                    break;
-                case "PING": // Doesn't expect an answer back
-                    break;
-                default:
-                    System.out.println("Unknown server request type");
+            if (frames.read(socket) < 0) {
+                System.out.println("Connection closed by the server");
+                break;
             }
         }
         selector.close();
     }
 
+    /*
+     * Handle one server message
+     * @param serverAnswer The lines of the message, the first one is the request type
+     * @return False if the server ended the connection
+     */
+    private boolean handleServerMessage(String[] serverAnswer) throws Exception {
+        String requestType = serverAnswer[0].toUpperCase();
+
+        switch (requestType) {
+            case "QUEUE": // Display the queue menu
+                Connection.send(socket, "ACK");
+                queueMenu(serverAnswer[1]);
+                break;
+            case "END": // Close the connection
+                Connection.send(socket, "ACK");
+                return false;
+            case "INFO": // Display the game information
+            case "QUESTION": // Update the question
+            case "SCORE": // Update the score
+                gameMenu(serverAnswer, requestType);
+                Connection.send(socket, "ACK");
+                break;
+            case "TURN": // Send the player's turn
+                Connection.send(socket, this.playerMenu.turn());
+                break;
+            case "GAMEOVER": // Display the game over message
+                Connection.send(socket, this.playerMenu.gameOver(serverAnswer[1]));
+                break;
+            case "PING": // Doesn't expect an answer back
+                break;
+            default:
+                System.out.println("Unknown server request type");
+        }
+        return true;
+    }
+
     /*
      * Initialize the player menu
      */
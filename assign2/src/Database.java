@@ -10,6 +10,9 @@ import org.springframework.security.crypto.bcrypt.BCrypt;
 
 class Database {
 
+    // BCrypt cost of the password hashes and session tokens, lowered by the benchmarks with -Dserver.bcrypt.rounds
+    public static final int BCRYPT_ROUNDS = Integer.getInteger("server.bcrypt.rounds", 10);
+
     private final File file;
     private final JSONObject database;
 
@@ -55,14 +58,31 @@ class Database {
     }
 
     /*
-     * Login a user to the Database
+     * Get the password hash of a user, to be checked with BCrypt outside the database lock
      * @param username: the username of the user
-     * @param password: the password of the user
+     * @return the saved password hash, null if there is no such user
+     */
+    public String getPasswordHash(String username) {
+        // Get the users from the database
+        JSONArray savedUsers = (JSONArray) this.database.get("database");
+        for (Object obj : savedUsers) {
+            JSONObject user = (JSONObject) obj;
+            if (user.get("username").equals(username)) {
+                return (String) user.get("password");
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Login a user to the Database, once the password was checked against its hash
+     * @param username: the username of the user
+     * @param passwordHash: the password hash the password was checked against
      * @param token: the token of the user
      * @param socket: the socket of the user
      * @return a Player object if the login is successful, null otherwise
      */
-    public Player login(String username, String password, String token, SocketChannel socket) {
+    public Player login(String username, String passwordHash, String token, SocketChannel socket) {
         // Get the users from the database
         JSONArray savedUsers = (JSONArray) this.database.get("database");
         for (Object obj : savedUsers) {
@@ -71,7 +91,7 @@ class Database {
             String savedPassword = (String) user.get("password");
 
             // If a match is found, update the user's token and return a new Player object
-            if (savedUsername.equals(username) && BCrypt.checkpw(password, savedPassword)) {
+            if (savedUsername.equals(username) && savedPassword.equals(passwordHash)) {
                 user.put("token", token);
                 Long rank = ((Number) user.get("rank")).longValue();
                 return new Player(username, savedPassword, token, rank, socket);
@@ -84,12 +104,12 @@ class Database {
     /*
      * Register a new user to the Database
      * @param username: the username of the user
-     * @param password: the password of the user
+     * @param passwordHash: the password hashed with hashPassword
      * @param token: the token of the user
      * @param socket: the socket of the user
      * @return a Player object if the registration is successful, null otherwise
      */
-    public Player register(String username, String password, String token, SocketChannel socket) {
+    public Player register(String username, String passwordHash, String token, SocketChannel socket) {
         // Get the users from the database
         JSONArray savedUsers = (JSONArray) this.database.get("database");
         for (Object obj : savedUsers) {
@@ -104,7 +124,6 @@ class Database {
 
         // If the username is not taken, create a new JSONObject for the new user
         JSONObject newClient = new JSONObject();
-        String passwordHash = BCrypt.hashpw(password, BCrypt.gensalt());
         newClient.put("username", username);
         newClient.put("password", passwordHash);
         newClient.put("token", token);
@@ -118,6 +137,25 @@ class Database {
         return new Player(username, passwordHash, token, 0L, socket);
     }
 
+    /*
+     * Hash a password with BCrypt, to be done outside the database lock
+     * @param password: the password of the user
+     * @return the password hash to save
+     */
+    public static String hashPassword(String password) {
+        return BCrypt.hashpw(password, BCrypt.gensalt(BCRYPT_ROUNDS));
+    }
+
+    /*
+     * Check a password against a saved hash with BCrypt, to be done outside the database lock
+     * @param password: the password given by the user
+     * @param passwordHash: the saved password hash
+     * @return true if the password matches
+     */
+    public static boolean checkPassword(String password, String passwordHash) {
+        return BCrypt.checkpw(password, passwordHash);
+    }
+
     /*
      * Restore a user from the Database using a token
      * @param token: the token of the user
@@ -0,0 +1,190 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ * Framing of the messages between the server and the clients: every message is sent as a 4 byte length
+ * followed by its UTF-8 bytes, so a read can return part of a message or several messages.
+ * A FrameBuffer is the reassembly buffer of one connection. It keeps the bytes read until they make whole
+ * messages and only holds a pooled buffer while part of a message is pending, so idle connections cost
+ * none. A FrameBuffer is used by the one thread reading its connection.
+ * Outgoing messages are encoded by frame() straight into a pooled buffer, with a pooled UTF-8 encoder, so a
+ * message that fits in a pooled buffer allocates no byte array. A reactor queues the frames of a connection
+ * and writes them as the socket accepts them (see Session); send() writes one frame from a thread that
+ * owns its connection's writes, the virtual thread of a connection or a client.
+ */
+public class FrameBuffer {
+
+    public static final int HEADER = 4;              // Length of a message in bytes, big-endian
+    public static final int MAX_MESSAGE = 1 << 20;   // Longer lengths are taken as a corrupted stream
+
+    private static final BufferPool BUFFERS = new BufferPool(4096, 1024);
+    private static final Queue<Encoder> ENCODERS = new ConcurrentLinkedQueue<>(); // Encoders not in use
+
+    // A UTF-8 encoder and the buffer its characters are copied to, used by one thread at a time
+    private static class Encoder {
+        final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final CharBuffer chars = CharBuffer.allocate(BUFFERS.size() - HEADER);
+    }
+
+    private ByteBuffer buffer; // Bytes read and not consumed yet, ready for the next read; null when empty
+
+    /*
+     * Reads the available bytes from the connection, blocking if the connection is blocking
+     * @param socket: Connection to read
+     * @return Number of bytes read, -1 at the end of the stream
+     */
+    public int read(SocketChannel socket) throws IOException {
+        if (buffer == null)
+            buffer = BUFFERS.acquire();
+        try {
+            return socket.read(buffer);
+        } finally {
+            if (buffer.position() == 0)
+                release();
+        }
+    }
+
+    /*
+     * Takes the next whole message out of the bytes read
+     * @return Next message, null if no message is complete yet
+     */
+    public String next() throws IOException {
+        if (buffer == null || buffer.position() < HEADER)
+            return null;
+
+        int length = buffer.getInt(0);
+        if (length < 0 || length > MAX_MESSAGE)
+            throw new IOException("Invalid message length: " + length);
+        if (buffer.position() < HEADER + length) {
+            if (buffer.capacity() < HEADER + length)
+                grow(HEADER + length);
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.flip();
+        buffer.position(HEADER);
+        buffer.get(bytes);
+        buffer.compact();
+        if (buffer.position() == 0)
+            release();
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Reads the next message from a blocking connection
+     * @param socket: Connection to read
+     * @return Next message, null at the end of the stream
+     */
+    public String receive(SocketChannel socket) throws IOException {
+        String message;
+        while ((message = next()) == null) {
+            if (read(socket) < 0)
+                return null;
+        }
+        return message;
+    }
+
+    /*
+     * Gives the buffer back to the pool, a partial message is dropped
+     */
+    public void release() {
+        if (buffer == null)
+            return;
+        BUFFERS.release(buffer);
+        buffer = null;
+    }
+
+    /*
+     * Moves the bytes read to a buffer large enough for a message longer than the pooled buffers
+     * @param size: Size of the new buffer in bytes
+     */
+    private void grow(int size) {
+        ByteBuffer larger = ByteBuffer.allocateDirect(size);
+        buffer.flip();
+        larger.put(buffer);
+        BUFFERS.release(buffer);
+        buffer = larger;
+    }
+
+    /*
+     * Encodes one message, its length and its bytes, in a pooled buffer (a new one if it does not fit)
+     * @param message: Message to send
+     * @return Frame ready to be written, to be given back with recycle() once written
+     */
+    public static ByteBuffer frame(String message) {
+        // Every character takes at least one byte, longer messages never fit
+        if (message.length() <= BUFFERS.size() - HEADER) {
+            Encoder encoder = ENCODERS.poll();
+            if (encoder == null)
+                encoder = new Encoder();
+            ByteBuffer frame = BUFFERS.acquire();
+            try {
+                encoder.chars.clear();
+                encoder.chars.put(message).flip();
+                encoder.encoder.reset();
+                frame.position(HEADER);
+                CoderResult result = encoder.encoder.encode(encoder.chars, frame, true);
+                if (!result.isOverflow())
+                    result = encoder.encoder.flush(frame);
+                if (!result.isOverflow())
+                    return frame.putInt(0, frame.position() - HEADER).flip();
+                BUFFERS.release(frame);
+            } finally {
+                ENCODERS.add(encoder);
+            }
+        }
+
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(HEADER + bytes.length).putInt(bytes.length).put(bytes).flip();
+    }
+
+    /*
+     * Gives a written frame back to the pool
+     * @param frame: Frame returned by frame()
+     */
+    public static void recycle(ByteBuffer frame) {
+        BUFFERS.release(frame);
+    }
+
+    /*
+     * Sends one message and returns once the whole frame is written. A non-blocking connection that is full
+     * is waited for with a selector, not retried in a loop.
+     * @param socket: Connection to write, by one thread at a time
+     * @param message: Message to send
+     */
+    public static void send(SocketChannel socket, String message) throws IOException {
+        ByteBuffer frame = frame(message);
+        try {
+            while (frame.hasRemaining()) {
+                if (socket.write(frame) == 0 && frame.hasRemaining())
+                    awaitWritable(socket);
+            }
+        } finally {
+            recycle(frame);
+        }
+    }
+
+    /*
+     * Waits until a full non-blocking connection can be written again
+     * @param socket: Connection to wait for
+     */
+    private static void awaitWritable(SocketChannel socket) throws IOException {
+        try (Selector selector = Selector.open()) {
+            socket.register(selector, SelectionKey.OP_WRITE);
+            selector.select();
+        }
+    }
+}
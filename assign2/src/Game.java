@@ -1,38 +1,60 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
-public class Game implements Runnable {
+/*
+ * A game, played as a sequence of exchanges: the server sends a request to one player and waits for
+ * that player's answer before the next request. The answers are delivered by the players' sessions,
+ * on the threads of their reactors or their virtual threads, so the game does not own a thread while it
+ * waits for a player.
+ * The game lock only guards the exchanges; requests, steps and answers run outside it, so a slow client
+ * or the database never keeps a disconnect of another player waiting. The database writes are posted to
+ * the server workers, so they do not run on a reactor either.
+ */
+public class Game {
 
     // Players
     private final List<Player> players;
 
-    // Database
+    // Server and database
+    private final Server server;
     private final Database database;
     private final ReentrantLock databaseLock;
 
-    // Waiting Queue
-    private final List<Player> waitingQueue;
-    private final ReentrantLock waitingQueueLock;
-
     // Questions and scores
     private static final int ROUNDS = 2;
     private final List<Question> questions;
     private int[] scores;
+    private String winner;
+
+    // Exchanges
+    private final Deque<Exchange> exchanges;
+    private Exchange current;             // Exchange waiting for an answer
+    private boolean finished;
+    private final ReentrantLock gameLock; // Answers of different players arrive on different threads
+
+    /*
+     * A request to a player and what to do with the answer.
+     * Exchanges without a player are steps of the game itself, run when they are reached.
+     */
+    private record Exchange(Player player, String requestType, Supplier<String> message, Consumer<String> onAnswer) {}
 
-    public Game(List<Player> players, Database database, ReentrantLock databaseLock,
-                List<Player> waitingQueue,
-                ReentrantLock waitingQueueLock) {
+    public Game(List<Player> players, Server server, Database database, ReentrantLock databaseLock) {
         this.players = players;
+        this.server = server;
         this.database = database;
         this.databaseLock = databaseLock;
-        this.waitingQueue = waitingQueue;
-        this.waitingQueueLock = waitingQueueLock;
         this.questions = Utils.getRandomQuestions(ROUNDS);
         this.scores = new int[this.players.size()];
         // initialize scores
         for (int i = 0 ; i < this.players.size() ; i++) {
             this.scores[i] = 0;
         }
+        this.exchanges = new ArrayDeque<>();
+        this.gameLock = new ReentrantLock();
     }
 
     /*
@@ -42,88 +64,187 @@ public class Game implements Runnable {
      * The winner is the player with the highest score.
      * If there's a tie, the players will divide between themselves the gained rank.
      */
-    public void run() {
+    public void start() {
+        gameLock.lock();
         try {
             System.out.println("Starting quiz with " + this.players.size() + " players");
-            String winner = this.playGameRounds();
-            System.out.println("Quiz finished. Winner: " + winner);
-            this.handlePostGame(winner);
-        } catch (Exception exception) {
-            System.out.println("Exception occurred during game. Connection closed. : " + exception.getMessage());
-            this.notifyPlayers("END", "Exception occurred during game. Connection closed.", null);
+            this.playGameRounds();
+            this.step(() -> {
+                this.winner = this.determineWinner();
+                System.out.println("Quiz finished. Winner: " + winner);
+            });
+            this.handlePostGame();
+        } finally {
+            gameLock.unlock();
         }
+        this.next();
     }
 
     /*
-     * Ask the players if they want to play again.
-     * If they want to play again, they are placed in the waiting queue.
-     * If they don't want to play again, their session token is invalidated and the connection is closed.
-     *
-     * @param winner The winner of the game
+     * Answer of a player, delivered by its session
+     * @param player The player that answered
+     * @param answer The answer
      */
-    private void handlePostGame(String winner) throws Exception {
-        for (Player player : this.players) {
-            Server.request(player.getSocket(), "GAMEOVER", winner);
-            String response = Connection.receive(player.getSocket());
+    public void answer(Player player, String answer) {
+        Exchange exchange;
+        gameLock.lock();
+        try {
+            if (finished || current == null || current.player() != player)
+                return;
+
+            exchange = current;
+            current = null;
+        } finally {
+            gameLock.unlock();
+        }
+
+        // Only one exchange is open at a time, so the answers are never handled concurrently
+        exchange.onAnswer().accept(answer);
+        this.next();
+    }
+
+    /*
+     * A player closed the connection, the game ends for everyone.
+     * @param player The player that left
+     */
+    public void disconnected(Player player) {
+        if (this.abort(player))
+            System.out.println("Player " + player.getUsername() + " left. Connection closed.");
+    }
 
-            if (response.equals("Y")) {
-                addPlayerToQueue(player);
-            } else {
-                endConnection(player);
+    /*
+     * Send the next requests, running the game steps on the way, until one waits for an answer
+     */
+    private void next() {
+        while (true) {
+            Exchange exchange;
+            gameLock.lock();
+            try {
+                if (finished)
+                    return;
+                exchange = exchanges.poll();
+                if (exchange == null)
+                    finished = true;
+                else if (exchange.player() != null)
+                    current = exchange;
+            } finally {
+                gameLock.unlock();
+            }
+
+            if (exchange == null) {
+                server.gameFinished(this);
+                return;
+            }
+
+            try {
+                if (exchange.player() == null) {
+                    exchange.onAnswer().accept(null);
+                } else {
+                    server.request(exchange.player().getSocket(), exchange.requestType(), exchange.message().get());
+                    return;
+                }
+            } catch (Exception exception) {
+                System.out.println("Exception occurred during game. Connection closed. : " + exception.getMessage());
+                this.abort(null);
+                return;
             }
         }
     }
 
     /*
-     * End the connection with the player.
-     * The player's session token is invalidated and the connection is closed.
-     *
-     * @param player The player to end the connection with
+     * End the game after an error, closing the connections of the players
+     * @param excluded The player whose connection is already closed
+     * @return False if the game had already finished
      */
-    private void endConnection(Player player) throws Exception {
-        Server.request(player.getSocket(), "END", "Connection closed");
-        this.databaseLock.lock();
+    private boolean abort(Player excluded) {
+        gameLock.lock();
         try {
-            this.database.invalidateToken(player);
-            this.database.backup();
+            if (finished)
+                return false;
+            finished = true;
+            current = null;
+            exchanges.clear();
         } finally {
-            this.databaseLock.unlock();
+            gameLock.unlock();
+        }
+
+        for (Player player : players) {
+            if (player == excluded)
+                continue;
+            try {
+                server.request(player.getSocket(), "END", "Exception occurred during game. Connection closed.");
+            } catch (Exception exception) {
+                System.out.println("Exception: " + exception.getMessage());
+            }
+            server.closeConnection(player);
         }
-        player.getSocket().close();
+        server.gameFinished(this);
+        return true;
     }
 
     /*
-     * Add a player to the waiting queue.
-     * If the player is already in the queue, their socket is updated with the new one.
-     * If the player is not in the queue, they are added to the end of the queue.
-     *
-     * @param player The player to be added to the queue
+     * Queue a request to a player
+     * @param player The player that will receive the request
+     * @param requestType The type of the request
+     * @param message The message, built when the request is sent
+     * @param onAnswer What to do with the answer
      */
-    private void addPlayerToQueue(Player player) {
-        this.waitingQueueLock.lock();
-        try {
-            Player existingPlayer = this.waitingQueue.stream()
-                    .filter(p -> p.equals(player))
-                    .findFirst()
-                    .orElse(null);
-
-            if (existingPlayer != null) { // player already exists in the queue
-                existingPlayer.setSocket(player.getSocket());
-                System.out.println("Player " + player.getUsername() + " reconnected. Queue size: " + this.waitingQueue.size());
-            } else { // else, player is added to the queue
-                this.waitingQueue.add(player);
-                System.out.println("Player " + player.getUsername() + " is now in the waiting queue. Queue size: " + this.waitingQueue.size());
-            }
+    private void exchange(Player player, String requestType, Supplier<String> message, Consumer<String> onAnswer) {
+        exchanges.add(new Exchange(player, requestType, message, onAnswer));
+    }
 
-            Server.request(player.getSocket(), "QUEUE", "You joined the waiting queue with ranking of  " + player.getRank() + " points.");
-            Connection.receive(player.getSocket());
-        } catch (Exception exception) {
-            System.out.println("Error while adding player to the waiting queue. Info: " + exception.getMessage());
-        } finally {
-            this.waitingQueueLock.unlock();
+    /*
+     * Queue a step of the game, run after the requests before it were answered
+     * @param step The step
+     */
+    private void step(Runnable step) {
+        exchanges.add(new Exchange(null, null, null, answer -> step.run()));
+    }
+
+    /*
+     * Ask the players if they want to play again.
+     * If they want to play again, they are placed in the waiting queue.
+     * If they don't want to play again, their session token is invalidated and the connection is closed.
+     */
+    private void handlePostGame() {
+        for (Player player : this.players) {
+            exchange(player, "GAMEOVER", () -> winner, response -> {
+                try {
+                    if (response.equals("Y")) {
+                        server.requeue(player);
+                    } else {
+                        endConnection(player);
+                    }
+                } catch (Exception exception) {
+                    System.out.println("Error after the game. Info: " + exception.getMessage());
+                }
+            });
         }
     }
 
+    /*
+     * End the connection with the player.
+     * The player's session token is invalidated and the connection is closed.
+     *
+     * @param player The player to end the connection with
+     */
+    private void endConnection(Player player) throws Exception {
+        server.request(player.getSocket(), "END", "Connection closed");
+        // The database is written on a worker, not on the thread that delivered the answer
+        server.submit(() -> {
+            this.databaseLock.lock();
+            try {
+                this.database.invalidateToken(player);
+                this.database.backup();
+            } catch (Exception exception) {
+                System.out.println("Error invalidating token. Info: " + exception.getMessage());
+            } finally {
+                this.databaseLock.unlock();
+            }
+        });
+        server.closeConnection(player);
+    }
+
     /*
      * The game will ask each user to throw 2 dices.
      * The game is made of at least 2 players.
@@ -132,29 +253,28 @@ public class Game implements Runnable {
      * Wins the player that has the biggest score after N playGameRounds.
      * If there's a tie, the players will divide between themselves the gained elo.
      */
-    private String playGameRounds() throws Exception {
+    private void playGameRounds() {
         notifyPlayers("INFO", "Game Started", null);
 
         if(players.size() < 2) {
             notifyPlayers("END", "Not enough players to start the game", null);
-            return "Not enough players to start the game";
+            return;
         }
 
         for (int round = 0; round < ROUNDS; round++) {
             for (Player player : players) {
+                int currentRound = round;
                 printQuestion(player, round);
                 notifyPlayers("INFO", "It's " + player.getUsername() + "'s turn", player);
-                Server.request(player.getSocket(), "TURN", "Your turn to answer. Choose a letter between A and D.");
-                String answer = Connection.receive(player.getSocket());
-                System.out.println("Player " + player.getUsername() + " answered: " + answer + " in round " + round);
-                if (answer.equals(questions.get(round).getAnswer())) {
-                    scores[players.indexOf(player)]++;
-                }
+                exchange(player, "TURN", () -> "Your turn to answer. Choose a letter between A and D.", answer -> {
+                    System.out.println("Player " + player.getUsername() + " answered: " + answer + " in round " + currentRound);
+                    if (answer.equals(questions.get(currentRound).getAnswer())) {
+                        scores[players.indexOf(player)]++;
+                    }
+                });
                 printCurrentScores();
             }
         }
-
-        return determineWinner();
     }
 
     /*
@@ -162,7 +282,7 @@ public class Game implements Runnable {
      * The winner is the player with the highest score.
      * The winner's rank is updated in the database.
      */
-    private String determineWinner() throws Exception {
+    private String determineWinner() {
         String winner = "";
         int maxScore = scores[0];
         boolean tie = true;
@@ -194,14 +314,23 @@ public class Game implements Runnable {
     }
 
     /*
-     * Update the player's rank in the database.
+     * Update the player's rank in the database, on a worker.
      * @param player The player to update the rank
      */
-    private void updateDatabaseRank(Player player) throws Exception {
-        this.databaseLock.lock();
-        this.database.updateRank(player, this.scores[this.players.indexOf(player)]);
-        this.database.backup();
-        this.databaseLock.unlock();
+    private void updateDatabaseRank(Player player) {
+        int value = this.scores[this.players.indexOf(player)];
+        server.submit(() -> {
+            this.databaseLock.lock();
+            try {
+                this.database.updateRank(player, value);
+                this.database.backup();
+            } catch (Exception exception) {
+                System.out.println("Error updating rank. Info: " + exception.getMessage());
+            } finally {
+                this.databaseLock.unlock();
+            }
+            server.updateLeaderboard();
+        });
     }
 
     /*
@@ -209,52 +338,41 @@ public class Game implements Runnable {
      * @param player The player that will receive the question
      * @param round The round of the game
      */
-    private void printQuestion(Player player, int round) throws Exception {
+    private void printQuestion(Player player, int round) {
         Question question = questions.get(round);
         String questionText = "Round: " + (round + 1) + "/" + ROUNDS + "\n" +
                 "Question: " + question.getQuestionText() + "\n" +
                 "Options: " + question.getOptions() + "\n";
-        Server.request(player.getSocket(), "QUESTION", questionText);
-        Connection.receive(player.getSocket());
+        exchange(player, "QUESTION", () -> questionText, answer -> {});
     }
 
     /*
      * Print the current scores of the players in the game.
+     * The scores are read when the message is sent, after the answer of the turn.
      */
     private void printCurrentScores() {
-        StringBuilder results = new StringBuilder();
-        for (Player player : this.players) {
-            results.append(player.getUsername()).append(" Score: ").append(scores[this.players.indexOf(player)]).append("\n");
-        }
-        this.notifyPlayers("SCORE", results.toString(), null);
+        this.notifyPlayers("SCORE", () -> {
+            StringBuilder results = new StringBuilder();
+            for (Player player : this.players) {
+                results.append(player.getUsername()).append(" Score: ").append(scores[this.players.indexOf(player)]).append("\n");
+            }
+            return results.toString();
+        }, null);
     }
 
     /*
-     * Notify all players in the game with a message.
+     * Notify all players in the game with a message, each one acknowledging it.
      * @param messageType The type of the message
      * @param message The message to be sent
      * @param excluded The player that will not receive the message
      */
     private void notifyPlayers(String messageType, String message, Player excluded) {
-        this.players.stream()
-                .filter(player -> excluded == null || !player.equals(excluded))
-                .forEach(player -> sendPlayerMessage(player, messageType, message));
+        this.notifyPlayers(messageType, () -> message, excluded);
     }
 
-    /*
-     * Send a message to a player.
-     * @param player The player to send the message to
-     * @param messageType The type of the message
-     * @param message The message to be sent
-     */
-    private void sendPlayerMessage(Player player, String messageType, String message) {
-        try {
-            Server.request(player.getSocket(), messageType, message);
-            Connection.receive(player.getSocket());
-        } catch (Exception exception) {
-            System.out.println("Exception: " + exception.getMessage());
-        }
+    private void notifyPlayers(String messageType, Supplier<String> message, Player excluded) {
+        this.players.stream()
+                .filter(player -> excluded == null || !player.equals(excluded))
+                .forEach(player -> exchange(player, messageType, message, answer -> {}));
     }
-
-
-}
\ No newline at end of file
+}
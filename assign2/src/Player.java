@@ -20,6 +20,10 @@ public class Player {
         return this.username;
     }
 
+    public String getToken() {
+        return this.token;
+    }
+
     public Long getRank() {
         return this.rank;
     }
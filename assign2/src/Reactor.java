@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ * A selector thread serving a shard of the server connections.
+ * The acceptor hands new connections to the reactors in turn; every connection stays on its reactor,
+ * whose thread reads it, writes its queued frames and runs its Session state machine. Other threads (workers,
+ * games on other reactors, the scheduler) change a connection's selector registration through execute().
+ */
+public class Reactor implements Runnable {
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks;  // Work posted by other threads, run by the reactor thread
+    private final ByteBuffer[] writeBatch; // Frames of one gathering write, used by the reactor thread only
+    private final int index;
+    private Thread thread;                // Created by start()
+    private volatile boolean running;
+
+    // Constants
+    private final long SELECT_TIMEOUT = 1000; // Maximum time between timeout checks in milliseconds
+    private static final int WRITE_BATCH = 64; // Maximum frames of a gathering write
+
+    public Reactor(int index) throws IOException {
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.writeBatch = new ByteBuffer[WRITE_BATCH];
+        this.index = index;
+    }
+
+    /*
+     * Starts the reactor thread
+     */
+    public void start() {
+        this.running = true;
+        this.thread = new Thread(this, "reactor-" + index);
+        this.thread.start();
+    }
+
+    /*
+     * Stops the reactor thread, the server closes the connections
+     */
+    public void stop() {
+        this.running = false;
+        selector.wakeup();
+    }
+
+    /*
+     * @return Array for the frames of a gathering write, to be cleared after use, on the reactor thread
+     */
+    public ByteBuffer[] writeBatch() {
+        return this.writeBatch;
+    }
+
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /*
+     * @return True if called on the reactor thread
+     */
+    public boolean inReactorThread() {
+        return Thread.currentThread() == this.thread;
+    }
+
+    /*
+     * Runs a task on the reactor thread
+     * @param task: Task to run
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /*
+     * Registers a new connection with this reactor and starts its session
+     * @param session: Session of the connection
+     */
+    public void register(Session session) {
+        execute(() -> {
+            try {
+                SelectionKey key = session.getSocket().register(selector, SelectionKey.OP_READ, session);
+                session.attach(key);
+                session.start();
+            } catch (ClosedChannelException exception) {
+                session.close();
+            }
+        });
+    }
+
+    /*
+     * Selects ready connections, writes their queued frames and hands their input to their session
+     */
+    public void run() {
+        long lastCheck = System.currentTimeMillis();
+
+        while (running) {
+            try {
+                selector.select(SELECT_TIMEOUT);
+            } catch (IOException exception) {
+                System.out.println("Reactor error: " + exception.getMessage());
+                return;
+            }
+
+            Runnable task;
+            while ((task = tasks.poll()) != null)
+                task.run();
+
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+                Session session = (Session) key.attachment();
+                if (key.isValid() && key.isWritable())
+                    session.flush();
+                if (key.isValid() && key.isReadable())
+                    session.read();
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastCheck >= SELECT_TIMEOUT) {
+                lastCheck = now;
+                for (SelectionKey key : selector.keys())
+                    if (key.isValid())
+                        ((Session) key.attachment()).checkTimeout(now);
+            }
+        }
+
+        try {
+            selector.close();
+        } catch (IOException exception) {
+            System.out.println("Reactor error: " + exception.getMessage());
+        }
+    }
+}
@@ -1,15 +1,29 @@
+import java.awt.GraphicsEnvironment;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.json.simple.parser.ParseException;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.locks.ReentrantLock;
 import org.springframework.security.crypto.bcrypt.BCrypt;
 
+/*
+ * Multi-reactor server: one acceptor thread hands every connection to one of REACTORS selector threads,
+ * where a Session state machine drives its authentication, queue and game phases without blocking.
+ * Login, register and restore (BCrypt and the database) run on a small worker pool, so slow logins
+ * and slow clients never stall the reactors, and idle, queued or playing clients cost no thread.
+ * The number of reactors defaults to the number of processors and can be set with -Dserver.reactors.
+ *
+ * With -Dserver.threads=virtual every connection is instead served by its own virtual thread, which
+ * blocks on the socket and drives the same Session, and every game starts on its own virtual thread.
+ * Authentication then runs on the connection's thread. No lock is held during socket I/O in either mode.
+ */
 public class Server {
 
     // Server
@@ -17,8 +31,13 @@ public class Server {
     private final int ranked; // 0 - Simple Mode, 1 - Ranked Mode
     private long startTime; // Server start time
     private ServerSocketChannel serverSocket;
-    private final ExecutorService gameThreadPool;
-    private final ExecutorService authThreadPool;
+    private final boolean virtualThreads; // Thread per connection instead of reactors
+    private volatile boolean running;
+    private final Reactor[] reactors;
+    private final ExecutorService workerPool; // Blocking work: BCrypt and the database
+    private final List<Thread> threads;
+    private final Map<SocketChannel, Session> sessions;
+    private final AtomicInteger activeGames;
     private final ReentrantLock timeLock;
 
     // Ping
@@ -42,21 +61,34 @@ public class Server {
     // Constants
     private final String DATABASE_PATH = "server/";
     private final int SLACK_FACTOR = 4; // Slack Factor, used to decrease the waiting times for ranked games
-    private final int MAX_CONCURRENT_AUTH = 5; // Maximum number of concurrent authentications
+    private final int QUEUE_DISPLAY = 5; // Number of queued players shown in the server menu
     private final int PLAYERS_PER_GAME = 2; // Number of players per game
-    private final int MAX_CONCURRENT_GAMES = 3; // Maximum number of concurrent games
+    private final int SCHEDULE_INTERVAL = 100; // Time between scheduling passes in milliseconds
+    private final int REACTORS = Integer.getInteger("server.reactors", Runtime.getRuntime().availableProcessors());
+    private final int BACKLOG = 1024; // Pending connections, a burst of clients can outrun the acceptor
+    private final int WORKERS = Math.max(2, Runtime.getRuntime().availableProcessors()); // Concurrent BCrypt operations
 
 
     public Server(int port, int ranked, String filename) throws IOException, ParseException {
+        this(port, ranked, filename, "virtual".equals(System.getProperty("server.threads")));
+    }
+
+    public Server(int port, int ranked, String filename, boolean virtualThreads) throws IOException, ParseException {
 
         // Server information
         this.port = port;
         this.ranked = ranked;
         this.startTime = System.currentTimeMillis();
+        this.virtualThreads = virtualThreads;
 
         // Concurrent fields
-        this.gameThreadPool = Executors.newFixedThreadPool(MAX_CONCURRENT_GAMES);
-        this.authThreadPool = Executors.newFixedThreadPool(MAX_CONCURRENT_AUTH);
+        this.reactors = new Reactor[virtualThreads ? 0 : Math.max(1, REACTORS)];
+        for (int i = 0; i < this.reactors.length; i++)
+            this.reactors[i] = new Reactor(i);
+        this.workerPool = virtualThreads ? null : Executors.newFixedThreadPool(WORKERS);
+        this.threads = new ArrayList<>();
+        this.sessions = new ConcurrentHashMap<>();
+        this.activeGames = new AtomicInteger();
         this.waitingQueue = new ArrayList<Player>();
         this.database = new Database(this.DATABASE_PATH + filename);
         this.tokenIdx = 0;
@@ -67,8 +99,8 @@ public class Server {
         this.tokenLock = new ReentrantLock();
         this.timeLock = new ReentrantLock();
 
-        // Server Menu
-        this.serverMenu = new ServerMenu(ranked);
+        // Server Menu, not shown without a display
+        this.serverMenu = GraphicsEnvironment.isHeadless() ? null : new ServerMenu(ranked);
         this.lastPing = System.currentTimeMillis();
     }
 
@@ -91,9 +123,55 @@ public class Server {
      */
     public void start() throws IOException {
         serverSocket = ServerSocketChannel.open();
-        serverSocket.bind(new InetSocketAddress(port));
+        serverSocket.bind(new InetSocketAddress(port), BACKLOG);
+        running = true;
         String mode = ranked == 1 ? "ranked" : "simple";
-        System.out.println("Server is handleServerMessages on port " + port + " with " + mode + " mode");
+        String threading = virtualThreads ? "a virtual thread per connection" : reactors.length + " reactors";
+        System.out.println("Server is handleServerMessages on port " + getPort() + " with " + mode + " mode and " + threading);
+    }
+
+    /*
+     * Stops the server: closes every connection and stops the threads
+     */
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException exception) {
+            System.out.println("Error closing server socket: " + exception.getMessage());
+        }
+        for (Thread thread : threads)
+            thread.interrupt();
+        for (Reactor reactor : reactors)
+            reactor.stop();
+        for (Session session : new ArrayList<>(sessions.values()))
+            session.close();
+        if (workerPool != null)
+            workerPool.shutdownNow();
+    }
+
+    /*
+     * Port the server is bound to, useful when started on port 0
+     */
+    public int getPort() {
+        return serverSocket.socket().getLocalPort();
+    }
+
+    public int getConnections() {
+        return sessions.size();
+    }
+
+    public int getActiveGames() {
+        return activeGames.get();
+    }
+
+    public int getQueuedPlayers() {
+        waitingQueueLock.lock();
+        try {
+            return waitingQueue.size();
+        } finally {
+            waitingQueueLock.unlock();
+        }
     }
 
     /*
@@ -117,32 +195,35 @@ public class Server {
     }
 
     /*
-     * Schedule games by creating a new game with players from the waiting queue
+     * Schedule games by creating new games with players from the waiting queue, as many as it fills
      */
     private void scheduleSimpleGame() {
+        List<List<Player>> games = new ArrayList<>();
         waitingQueueLock.lock();
 
-        if (waitingQueue.size() >= PLAYERS_PER_GAME) {
+        while (waitingQueue.size() >= PLAYERS_PER_GAME) {
             // Create a list of players for the game
             List<Player> gamePlayers = new ArrayList<>(waitingQueue.subList(0, PLAYERS_PER_GAME));
             // Remove the players from the waiting queue
-            waitingQueue.removeAll(gamePlayers);
+            waitingQueue.subList(0, PLAYERS_PER_GAME).clear();
 
             gamePlayers.forEach(player -> System.out.println("Player " + player.getUsername() + " removed from waiting queue"));
-
-            // Start the game
-            Runnable gameRunnable = new Game(gamePlayers, database, databaseLock, waitingQueue, waitingQueueLock);
-            gameThreadPool.execute(gameRunnable);
+            games.add(gamePlayers);
         }
         updateServerMenu();
 
         waitingQueueLock.unlock();
+
+        // Start the games
+        for (List<Player> gamePlayers : games)
+            startGame(gamePlayers);
     }
 
     /*
      * Schedule games by creating a new game with players from the waiting queue with similar rankings
      */
     private void scheduleRankedGame() {
+        List<Player> gamePlayers = null;
         waitingQueueLock.lock();
         if (waitingQueue.size() >= PLAYERS_PER_GAME) {
             sortPlayers(); // Sort the players by rank
@@ -152,9 +233,8 @@ public class Server {
                 int rankDifference = (int) Math.abs(waitingQueue.get(i).getRank() - waitingQueue.get(i + PLAYERS_PER_GAME - 1).getRank());
                 // if the difference is less than the slack, create a game
                 if (rankDifference < slack) {
-                    List<Player> players = new ArrayList<>(waitingQueue.subList(i, i + PLAYERS_PER_GAME));
-                    waitingQueue.removeAll(players);
-                    gameThreadPool.execute(new Game(players, database, databaseLock, waitingQueue, waitingQueueLock));
+                    gamePlayers = new ArrayList<>(waitingQueue.subList(i, i + PLAYERS_PER_GAME));
+                    waitingQueue.removeAll(gamePlayers);
                     resetStartTime();
                     break;
                 }
@@ -162,36 +242,115 @@ public class Server {
         }
         updateServerMenu();
         waitingQueueLock.unlock();
+
+        if (gamePlayers != null)
+            startGame(gamePlayers);
+    }
+
+    /*
+     * Hands the sessions of the players to a new game and sends its first request,
+     * on a new virtual thread in virtual thread mode
+     * @param players: Players of the game
+     */
+    private void startGame(List<Player> players) {
+        Game game = new Game(players, this, database, databaseLock);
+        for (Player player : players) {
+            Session session = sessions.get(player.getSocket());
+            if (session != null)
+                session.startGame(game);
+        }
+        activeGames.incrementAndGet();
+        if (virtualThreads)
+            Thread.ofVirtual().name("game").start(game::start);
+        else
+            game.start();
     }
 
     /*
-     * Handles the authentication of new players
+     * Called by a game when it ends
+     * @param game: Finished game
      */
-    private void connectionAuthenticator() {
-        while (true) {
+    public void gameFinished(Game game) {
+        activeGames.decrementAndGet();
+        updateServerMenu();
+    }
+
+    /*
+     * Accepts new connections and hands them to the reactors in turn, or to new virtual threads
+     */
+    private void connectionAcceptor() {
+        int next = 0;
+        while (running) {
             try {
                 SocketChannel playerSocket = serverSocket.accept();
-                handleNewPlayer(playerSocket);
+                handleNewPlayer(playerSocket, virtualThreads ? null : reactors[next]);
+                if (!virtualThreads)
+                    next = (next + 1) % reactors.length;
             } catch (Exception exception) {
-                System.out.println("Error handling new player: " + exception);
+                if (running)
+                    System.out.println("Error handling new player: " + exception);
             }
         }
     }
 
     /*
      * Handles a new player connection
-     * @param playerSocket: SocketChannel to send the request
+     * @param playerSocket: SocketChannel of the player
+     * @param reactor: Reactor that will serve the connection, null for a virtual thread
      */
-    private void handleNewPlayer(SocketChannel playerSocket) throws IOException {
+    private void handleNewPlayer(SocketChannel playerSocket, Reactor reactor) throws IOException {
         System.out.println("Player connected: " + playerSocket.getRemoteAddress());
-        Runnable newPlayerRunnable = () -> {
-            try {
-                handlePlayer(playerSocket);
-            } catch (Exception exception) {
-                System.out.println("Error handling new player: " + exception);
-            }
-        };
-        this.authThreadPool.execute(newPlayerRunnable);
+        Session session = new Session(playerSocket, reactor, this);
+        sessions.put(playerSocket, session);
+
+        if (reactor == null) {
+            Thread.ofVirtual().name("player").start(session::serve);
+        } else {
+            playerSocket.configureBlocking(false);
+            reactor.register(session);
+        }
+    }
+
+    /*
+     * Runs blocking work (BCrypt, database) outside the reactors, on a new virtual thread in virtual thread mode.
+     * Once the server stopped, the task runs on the calling thread.
+     * @param task: Task to run
+     */
+    public void submit(Runnable task) {
+        if (workerPool == null) {
+            Thread.ofVirtual().name("worker").start(task);
+            return;
+        }
+        try {
+            workerPool.execute(task);
+        } catch (RejectedExecutionException exception) {
+            task.run();
+        }
+    }
+
+    /*
+     * Forgets a closed session
+     * @param session: Closed session
+     */
+    public void removeSession(Session session) {
+        sessions.remove(session.getSocket(), session);
+    }
+
+    /*
+     * Closes the connection of a player
+     * @param player: Player to disconnect
+     */
+    public void closeConnection(Player player) {
+        Session session = sessions.get(player.getSocket());
+        if (session != null) {
+            session.close();
+            return;
+        }
+        try {
+            player.getSocket().close();
+        } catch (IOException exception) {
+            System.out.println("Error closing connection: " + exception.getMessage());
+        }
     }
 
     /*
@@ -203,62 +362,88 @@ public class Server {
         if(System.currentTimeMillis() - lastPing > PING_INTERVAL) {
             lastPing = System.currentTimeMillis();
 
+            // The queue is not locked while pinging, so a slow client does not block it
+            List<Player> queuedPlayers;
             waitingQueueLock.lock();
-            if (waitingQueue.isEmpty()) {
+            try {
+                queuedPlayers = new ArrayList<>(waitingQueue);
+            } finally {
                 waitingQueueLock.unlock();
-                return;
             }
+            if (queuedPlayers.isEmpty())
+                return;
 
             System.out.println("Pinging players...");
 
             // Ping all players in the waiting queue
-            Iterator<Player> iterator = waitingQueue.iterator();
-            while (iterator.hasNext()) {
-                Player player = iterator.next();
+            List<Player> unreachable = new ArrayList<>();
+            for (Player player : queuedPlayers) {
                 try {
-                    Server.request(player.getSocket(), "PING", "");
-                } catch (IOException exception) {
+                    request(player.getSocket(), "PING", "");
+                } catch (Exception exception) {
                     System.out.println("Error pinging player: " + exception);
-                    iterator.remove();
-                } catch (Exception e) {
-                    waitingQueueLock.unlock();
-                    throw new RuntimeException(e);
+                    unreachable.add(player);
                 }
             }
-            waitingQueueLock.unlock();
+
+            waitingQueueLock.lock();
+            try {
+                waitingQueue.removeAll(unreachable);
+            } finally {
+                waitingQueueLock.unlock();
+            }
         }
     }
 
+    /*
+     * Ends the connections that did not authenticate in time, the reactors do this for their connections
+     */
+    private void checkTimeouts() {
+        long now = System.currentTimeMillis();
+        for (Session session : sessions.values())
+            session.checkTimeout(now);
+    }
+
     /*
      * Runs the server
      */
     public void run() throws IOException {
 
         // Keeps an eye on the waiting list and launches a new game
-        // whenever it can, according to the threadPoll
+        // whenever it can
         Thread gameSchedulerThread = new Thread(() -> {
-            while (true) {
+            while (running) {
                 pingPlayers();
+                if (virtualThreads)
+                    checkTimeouts();
                 if (ranked == 1)
                     scheduleRankedGame();
                 else
                     scheduleSimpleGame();
+                try {
+                    Thread.sleep(SCHEDULE_INTERVAL);
+                } catch (InterruptedException exception) {
+                    return;
+                }
             }
         });
 
-        // Authenticates all connections and push new players into waiting list
-        Thread connectionAuthenticatorThread = new Thread(() -> {
-            while (true) connectionAuthenticator();
-        });
+        // Accepts all connections, the reactors authenticate them and push new players into waiting list
+        Thread connectionAcceptorThread = new Thread(this::connectionAcceptor);
 
         // Resets the saved player tokens before starting the server
         databaseLock.lock();
         database.resetTokens();
         databaseLock.unlock();
+        updateLeaderboard();
 
         // Run threads
+        for (Reactor reactor : reactors)
+            reactor.start();
+        threads.add(gameSchedulerThread);
+        threads.add(connectionAcceptorThread);
         gameSchedulerThread.start();
-        connectionAuthenticatorThread.start();
+        connectionAcceptorThread.start();
     }
 
     /*
@@ -271,15 +456,32 @@ public class Server {
         int index = tokenIdx;
         tokenIdx++;
         tokenLock.unlock();
-        return BCrypt.hashpw(username + index, BCrypt.gensalt());
+        return BCrypt.hashpw(username + index, BCrypt.gensalt(Database.BCRYPT_ROUNDS));
     }
 
     /*
-     * Adds a player to the waiting queue
-     * @param player: Player object to insert in the queue
-     * @return void
+     * Message of the queue request, depending on whether the player is already in the waiting queue
+     * @param player: Player joining the queue
+     * @return Message to send
      */
-    private void addPlayer(Player player) {
+    public String queueMessage(Player player) {
+        waitingQueueLock.lock();
+        try {
+            boolean queued = waitingQueue.stream().anyMatch(p -> p.equals(player));
+            return queued ? "You are already in the waiting queue with " + player.getRank() + " points."
+                    : "You entered in waiting queue with ranking  " + player.getRank() + " points.";
+        } finally {
+            waitingQueueLock.unlock();
+        }
+    }
+
+    /*
+     * Adds the player of a session to the waiting queue, once the client acknowledged the queue request.
+     * The session is marked as queued before the scheduler can see the player.
+     * @param session: Session of the player to insert in the queue
+     */
+    public void enqueue(Session session) {
+        Player player = session.getPlayer();
         waitingQueueLock.lock();
         try {
             Player existingPlayer = waitingQueue.stream()
@@ -289,19 +491,32 @@ public class Server {
 
             if (existingPlayer != null) {
                 existingPlayer.setSocket(player.getSocket());
+                session.queued(existingPlayer);
                 System.out.println("Player " + player.getUsername() + " reconnected. Queue size: " + waitingQueue.size());
-                Server.request(player.getSocket(), "QUEUE", "You are already in the waiting queue with " + player.getRank() + " points.");
             } else {
+                session.queued(player);
                 waitingQueue.add(player);
                 System.out.println("Player " + player.getUsername() + " is now in waiting queue. Queue size: " + waitingQueue.size());
-                Server.request(player.getSocket(), "QUEUE", "You entered in waiting queue with ranking  " + player.getRank() + " points.");
             }
-            Connection.receive(player.getSocket());
-        } catch (Exception exception) {
-            System.out.println("Error during insert in waiting queue. Info: " + exception.getMessage());
         } finally {
             waitingQueueLock.unlock();
         }
+
+        if (ranked == 1) {
+            sortPlayers();
+            resetStartTime();
+        }
+        updateServerMenu();
+    }
+
+    /*
+     * Puts a player back in the waiting queue after a game
+     * @param player: Player that wants to play again
+     */
+    public void requeue(Player player) throws Exception {
+        Session session = sessions.get(player.getSocket());
+        if (session != null)
+            session.joinQueue(player);
     }
 
     /*
@@ -314,104 +529,92 @@ public class Server {
     }
 
     /*
-     * Authenticates a player
-     * @param playerSocket: SocketChannel to send the request
+     * Authenticates a player, on a worker thread
+     * @param playerSocket: SocketChannel of the player
      * @param username: Username
      * @param password: Password
-     * @return Player object if the authentication is successful, null otherwise
+     * @return Player object if the authentication is successful
+     * @throws Exception with the NACK message otherwise
      */
     public Player login(SocketChannel playerSocket, String username, String password) throws Exception {
+        String passwordHash;
+        databaseLock.lock();
+        try {
+            passwordHash = database.getPasswordHash(username);
+        } finally {
+            databaseLock.unlock();
+        }
 
-        if (Objects.equals(username, "BACK") || Objects.equals(password, "BACK"))
-            return null;
-
+        // BCrypt runs outside the lock, so it does not hold up the other logins and the games
+        if (passwordHash == null || !Database.checkPassword(password, passwordHash))
+            throw new Exception("Wrong username or password");
         String token = this.getToken(username);
         Player player;
 
+        databaseLock.lock();
         try {
-            databaseLock.lock();
-            player = database.login(username, password, token, playerSocket);
+            player = database.login(username, passwordHash, token, playerSocket);
             database.backup();
+        } finally {
             databaseLock.unlock();
-
-            if (player != null) {
-                Server.request(playerSocket, "AUTH", "token-" + username + ".txt\n" + token);
-                Connection.receive(playerSocket);
-                return player;
-            } else {
-                Server.request(playerSocket, "NACK", "Wrong username or password");
-                Connection.receive(playerSocket);
-            }
-
-        } catch (Exception e) {
-            Server.request(playerSocket, "NACK", e.getMessage());
-            Connection.receive(playerSocket);
         }
-        return null;
+
+        if (player == null)
+            throw new Exception("Wrong username or password");
+        return player;
     }
 
     /*
-     * Registers a new player
-     * @param playerSocket: SocketChannel to send the request
+     * Registers a new player, on a worker thread
+     * @param playerSocket: SocketChannel of the player
      * @param username: Username
      * @param password: Password
-     * @return Player object if the registration is successful, null otherwise
+     * @return Player object if the registration is successful
+     * @throws Exception with the NACK message otherwise
      */
     public Player register(SocketChannel playerSocket, String username, String password) throws Exception {
-
-        if (Objects.equals(username, "BACK") || Objects.equals(password, "BACK"))
-            return null;
-
+        String passwordHash = Database.hashPassword(password);
         String token = this.getToken(username);
         Player player;
 
+        databaseLock.lock();
         try {
-            databaseLock.lock();
-            player = database.register(username, password, token, playerSocket);
+            player = database.register(username, passwordHash, token, playerSocket);
             database.backup();
+        } finally {
             databaseLock.unlock();
-
-            if (player != null) {
-                Server.request(playerSocket, "AUTH", "token-" + username + ".txt\n" + token);
-                Connection.receive(playerSocket);
-                return player;
-            } else {
-                Server.request(playerSocket, "NACK", "Username already in use");
-                Connection.receive(playerSocket);
-            }
-
-        } catch (Exception e) {
-            Server.request(playerSocket, "NACK", e.getMessage());
-            Connection.receive(playerSocket);
         }
-        return null;
+
+        if (player == null)
+            throw new Exception("Username already in use");
+        return player;
     }
 
     /*
-     * Restores a player connection
-     * @param playerSocket: SocketChannel to send the request
+     * Restores a player connection, on a worker thread
+     * @param playerSocket: SocketChannel of the player
      * @param token: Session token
-     * @return Player object if the restoration is successful, null otherwise
+     * @return Player object if the restoration is successful
+     * @throws Exception with the NACK message otherwise
      */
     public Player restore(SocketChannel playerSocket, String token) throws Exception {
+        Player player;
 
         databaseLock.lock();
-        Player player = database.restore(token, playerSocket);
-        database.backup();
-        databaseLock.unlock();
-
-        if (player != null) {
-            Server.request(playerSocket, "AUTH", "token-" + player.getUsername() + ".txt\n" + token);
-            Connection.receive(playerSocket);
-        } else {
-            Server.request(playerSocket, "NACK","Invalid session token");
-            Connection.receive(playerSocket);
+        try {
+            player = database.restore(token, playerSocket);
+            database.backup();
+        } finally {
+            databaseLock.unlock();
         }
+
+        if (player == null)
+            throw new Exception("Invalid session token");
         return player;
     }
 
     /*
-    * Sends a request to the player
+    * Sends a request to the player, through the session of the connection
     * @param socket: SocketChannel to send the request
     * @param requestType: Type of request
     *  - END: Connection terminated -> receives ACK
@@ -425,113 +628,42 @@ public class Server {
     *  - TURN: Message -> receives input
     * @param message: Message to send
     */
-    public static void request(SocketChannel socket, String requestType, String message) throws Exception {
-        Connection.send(socket, requestType + "\n" + message);
-    }
-
-    /*
-     * Handles a new player connection
-     */
-    public void handlePlayer(SocketChannel playerSocket) throws Exception {
-        String input;
-        Player player = null;
-        long startTime = System.currentTimeMillis();
-
-        do {
-            int TIMEOUT = 30000;
-            if (System.currentTimeMillis() - startTime >= TIMEOUT) {
-                terminateConnection(playerSocket, "Connection timeout");
-                return;
-            }
-
-            input = getOptionFromPlayer(playerSocket);
-
-            switch (input) {
-                case "1" -> player = authenticatePlayer(playerSocket, "login");
-                case "2" -> player = authenticatePlayer(playerSocket, "register");
-                case "3" -> {
-                    Server.request(playerSocket, "TKN", "Token?");
-                    String token = Connection.receive(playerSocket);
-                    System.out.println("TOKEN: " + token);
-                    if (token.equals("BACK")) continue;
-                    player = restore(playerSocket, token);
-                }
-                default -> {
-                    terminateConnection(playerSocket, "Connection terminated");
-                    return;
-                }
-            }
-
-            if (player != null) {
-                this.addPlayer(player);
-                if (ranked == 1) {
-                    sortPlayers();
-                    resetStartTime();
-                }
-            }
-
-        } while (player == null);
-        updateServerMenu();
+    public void request(SocketChannel socket, String requestType, String message) throws Exception {
+        Session session = sessions.get(socket);
+        if (session == null)
+            throw new IOException("Connection closed");
+        session.send(requestType + "\n" + message);
     }
 
     /*
-     * Terminates the connection with the player
-     * @param playerSocket: SocketChannel to send the request
-     * @param message: Message to send
-     */
-    private void terminateConnection(SocketChannel playerSocket, String message) throws Exception {
-        System.out.println("Connection timeout");
-        Server.request(playerSocket, "END", message);
-        playerSocket.close();
-    }
-
-    /*
-     * Gets the option from the player
-     * @param playerSocket: SocketChannel to send the request
-     * @return Option chosen by the player
-     */
-    private String getOptionFromPlayer(SocketChannel playerSocket) throws Exception {
-        Server.request(playerSocket, "OPT", "1 - Login\n2 - Register\n3 - Restore Connection\n4 - Quit");
-        return Connection.receive(playerSocket).toUpperCase();
-    }
-
-    /*
-     * Authenticates a player
-     * @param playerSocket: SocketChannel to send the request
-     * @param authenticationType: Type of authentication
-     * @return Player object if the authentication is successful, null otherwise
-     */
-    private Player authenticatePlayer(SocketChannel playerSocket, String authenticationType) throws Exception {
-        Server.request(playerSocket, "USR", "Username?");
-        String username = Connection.receive(playerSocket);
-        if (username.equals("BACK")) return null;
-        Server.request(playerSocket, "PSW", "Password?");
-        String password = Connection.receive(playerSocket);
-
-        return switch (authenticationType) {
-            case "login" -> login(playerSocket, username, password);
-            case "register" -> register(playerSocket, username, password);
-            default -> null;
-        };
-    }
-
-    /*
-     * Updates the server menu
+     * Updates the games and the waiting queue of the server menu.
+     * It is called on the reactors, so it does not take the database lock; see updateLeaderboard.
      */
     public void updateServerMenu() {
-        int totalGames = ((ThreadPoolExecutor) gameThreadPool).getActiveCount();
+        if (serverMenu == null)
+            return;
+
+        int totalGames = activeGames.get();
         serverMenu.setGames(String.valueOf(totalGames));
 
         waitingQueueLock.lock();
         try {
             String[] waitingQueueUsernames = waitingQueue.stream()
-                    .limit(MAX_CONCURRENT_AUTH)
+                    .limit(QUEUE_DISPLAY)
                     .map(Player::getUsername)
                     .toArray(String[]::new);
             serverMenu.setQueue(String.valueOf(waitingQueue.size()), waitingQueueUsernames);
         } finally {
             waitingQueueLock.unlock();
         }
+    }
+
+    /*
+     * Updates the leaderboard of the server menu, on a worker thread after the ranks changed
+     */
+    public void updateLeaderboard() {
+        if (serverMenu == null)
+            return;
 
         databaseLock.lock();
         try {
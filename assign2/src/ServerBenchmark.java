@@ -0,0 +1,208 @@
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Compares the two ways the server serves its connections, reactors (default) and a virtual thread per
+ * connection (-Dserver.threads=virtual), under the same load. Every mode runs an in-process server on a
+ * free port with a temporary database in server/, and PLAYERS clients, each on a virtual thread:
+ *  - Idle: the clients connect and wait at the option request. Reports the platform threads and the heap
+ *    per connection, from the average used heap of HEAP_SAMPLES collections before and after connecting;
+ *    it is approximate, and also holds the clients, which are the same in both modes.
+ *  - Games: the clients register and play one game, thinking THINK ms before every answer. Reports the
+ *    time, the games per second and the most games and players in play at once.
+ * BCrypt runs with 4 rounds unless -Dserver.bcrypt.rounds is given, so the games and not the hashes are
+ * measured. Run from the assign2 src directory, as the Server.
+ */
+public class ServerBenchmark {
+
+    private static final String DATABASE = "benchmark.json";
+    private static final long TIMEOUT = 120000; // Maximum time of a phase in milliseconds
+    private static final int HEAP_SAMPLES = 5;  // Collections averaged for every heap measurement
+    private static final AtomicInteger playing = new AtomicInteger(); // Clients between the start and the end of their game
+
+    private record Result(String mode, int players, int threads, double heapPerConnection, double connectMillis,
+                          double gameSeconds, int finished, int failed, int peakGames, int peakPlayers) {}
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "both";
+        int players = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        long think = args.length > 2 ? Long.parseLong(args[2]) : 50;
+        if (!mode.equals("both") && !mode.equals("reactor") && !mode.equals("virtual")) {
+            System.out.println("usage: java ServerBenchmark [reactor|virtual|both] [PLAYERS] [THINK]");
+            return;
+        }
+        if (System.getProperty("server.bcrypt.rounds") == null)
+            System.setProperty("server.bcrypt.rounds", "4");
+
+        // The server logs every connection, only the results are printed
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        List<Result> results = new ArrayList<>();
+        try {
+            if (!mode.equals("virtual"))
+                results.add(run(false, players, think));
+            if (!mode.equals("reactor"))
+                results.add(run(true, players, think));
+        } finally {
+            System.setOut(out);
+        }
+
+        out.printf("%d players, %d ms think time, %d processors\n", players, think, Runtime.getRuntime().availableProcessors());
+        out.println("mode     threads  ~heap/conn(KB)  connect(ms)  games(s)  games/s  finished  failed  peak games  peak players");
+        for (Result result : results) {
+            out.printf("%-8s %7d  %14.1f  %11.1f  %8.2f  %7.1f  %8d  %6d  %10d  %12d\n", result.mode(), result.threads(),
+                    result.heapPerConnection() / 1024, result.connectMillis(), result.gameSeconds(),
+                    result.finished() / 2 / result.gameSeconds(), result.finished(), result.failed(),
+                    result.peakGames(), result.peakPlayers());
+        }
+    }
+
+    /*
+     * Runs both phases against a new server
+     * @param virtualThreads: Serve the connections with virtual threads instead of reactors
+     * @param players: Number of clients
+     * @param think: Time before every answer in milliseconds
+     */
+    private static Result run(boolean virtualThreads, int players, long think) throws Exception {
+        File database = new File("server/" + DATABASE);
+        database.delete();
+        database.deleteOnExit(); // Games still ending after the server stops can write it again
+        Server server = new Server(0, 0, DATABASE, virtualThreads);
+        server.start();
+        server.run();
+        int port = server.getPort();
+
+        try {
+            double heapBefore = usedHeap();
+
+            // Idle: every client waits at the option request
+            CountDownLatch connected = new CountDownLatch(players);
+            CountDownLatch play = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(players);
+            AtomicInteger finished = new AtomicInteger(), failed = new AtomicInteger();
+            long tag = System.nanoTime();
+            long start = System.nanoTime();
+            for (int i = 0; i < players; i++) {
+                String username = "bench" + i + "_" + tag;
+                Thread.ofVirtual().start(() -> {
+                    try {
+                        if (client(port, username, think, connected, play))
+                            finished.incrementAndGet();
+                        else
+                            failed.incrementAndGet();
+                    } catch (Exception exception) {
+                        failed.incrementAndGet();
+                        connected.countDown();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            connected.await(TIMEOUT, TimeUnit.MILLISECONDS);
+            double connectMillis = (System.nanoTime() - start) / 1e6;
+
+            double heapPerConnection = (usedHeap() - heapBefore) / players;
+            int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+            // Games: every client registers and plays one game
+            AtomicInteger peakGames = new AtomicInteger(), peakPlayers = new AtomicInteger();
+            playing.set(0);
+            Thread monitor = Thread.ofVirtual().start(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    peakGames.accumulateAndGet(server.getActiveGames(), Math::max);
+                    peakPlayers.accumulateAndGet(playing.get(), Math::max);
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException exception) {
+                        return;
+                    }
+                }
+            });
+            start = System.nanoTime();
+            play.countDown();
+            done.await(TIMEOUT, TimeUnit.MILLISECONDS);
+            double gameSeconds = (System.nanoTime() - start) / 1e9;
+            monitor.interrupt();
+
+            return new Result(virtualThreads ? "virtual" : "reactor", players, threads, heapPerConnection, connectMillis,
+                    gameSeconds, finished.get(), failed.get(), peakGames.get(), peakPlayers.get());
+        } finally {
+            server.stop();
+            database.delete();
+        }
+    }
+
+    /*
+     * One player: connects, waits for the game phase, registers and plays one game
+     * @param port: Port of the server
+     * @param username: Username to register
+     * @param think: Time before every answer in milliseconds
+     * @param connected: Counted down once the option request arrived
+     * @param play: Released when the game phase starts
+     * @return True if the game ended normally
+     */
+    private static boolean client(int port, String username, long think, CountDownLatch connected, CountDownLatch play) throws Exception {
+        try (SocketChannel socket = SocketChannel.open(new InetSocketAddress("localhost", port))) {
+            FrameBuffer frames = new FrameBuffer();
+            String message = Connection.receive(socket, frames);
+            connected.countDown();
+            play.await();
+
+            while (true) {
+                switch (message.split("\n")[0]) {
+                    case "OPT" -> Connection.send(socket, "2");
+                    case "USR" -> Connection.send(socket, username);
+                    case "PSW" -> Connection.send(socket, "password");
+                    case "NACK" -> {
+                        return false;
+                    }
+                    case "INFO" -> {
+                        if (message.equals("INFO\nGame Started"))
+                            playing.incrementAndGet();
+                        Connection.send(socket, "ACK");
+                    }
+                    case "TURN" -> {
+                        Thread.sleep(think);
+                        Connection.send(socket, "A");
+                    }
+                    case "GAMEOVER" -> {
+                        playing.decrementAndGet();
+                        Connection.send(socket, "N");
+                    }
+                    case "PING" -> {}
+                    case "END" -> {
+                        Connection.send(socket, "ACK");
+                        return message.equals("END\nConnection closed");
+                    }
+                    default -> Connection.send(socket, "ACK");
+                }
+                message = Connection.receive(socket, frames);
+            }
+        }
+    }
+
+    /*
+     * Used heap after a collection, averaged over HEAP_SAMPLES collections
+     * @return Used heap in bytes
+     */
+    private static double usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long total = 0;
+        for (int i = 0; i < HEAP_SAMPLES; i++) {
+            System.gc();
+            Thread.sleep(50);
+            total += runtime.totalMemory() - runtime.freeMemory();
+        }
+        return (double) total / HEAP_SAMPLES;
+    }
+}
@@ -0,0 +1,443 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * State machine of one client connection, driven by its reactor or, without a reactor, by the
+ * connection's own virtual thread blocking in serve().
+ * Every request the server sends is answered by one message of the client, so the state says which
+ * answer is expected next:
+ *  - Authentication: OPTION -> USERNAME -> PASSWORD, or OPTION -> TOKEN, then AUTH_ACK or NACK_ACK.
+ *    Login, register and restore run on the server workers (BCrypt), in WORKING the connection is not read.
+ *    A virtual thread runs them itself.
+ *  - Queue: QUEUE_ACK until the client acknowledges the queue message, then QUEUED.
+ *  - Game: GAME, the answers go to the Game.
+ * The next state is always set before the request is sent, as the answer can arrive on the reactor thread
+ * while another thread is still sending.
+ * Messages are sent from any thread. With a reactor, send() queues the encoded frame and the reactor writes
+ * the queue in order, with gathering writes, waiting for OP_WRITE when the socket is full, so frames of different threads never
+ * interleave and no thread spins on a full socket. A closed session writes what the socket takes of its
+ * queue (the END message) before the socket is closed. A virtual thread connection writes in blocking
+ * mode, one frame at a time.
+ */
+public class Session {
+
+    public enum State { OPTION, USERNAME, PASSWORD, TOKEN, WORKING, AUTH_ACK, NACK_ACK, QUEUE_ACK, QUEUED, GAME, CLOSED }
+
+    // Connection
+    private final SocketChannel socket;
+    private final Reactor reactor;      // Null when served by a virtual thread
+    private final Server server;
+    private SelectionKey key;
+    private final FrameBuffer frames;   // Bytes read and not handled yet, used by the reading thread only
+    private final Queue<ByteBuffer> outbound; // Frames not written yet, written by the reactor thread only
+    private final ReentrantLock sendLock;     // One blocking write at a time, without a reactor
+    private boolean reading;            // OP_READ wanted, changed by the reactor thread only
+
+    // State
+    private volatile State state;
+    private final long deadline;        // Authentication deadline
+    private String option;              // Login (1) or register (2)
+    private String username;
+    private volatile Player player;
+    private volatile Game game;
+
+    // Constants
+    private final int TIMEOUT = 30000;  // Time to authenticate in milliseconds
+
+    public Session(SocketChannel socket, Reactor reactor, Server server) {
+        this.socket = socket;
+        this.reactor = reactor;
+        this.server = server;
+        this.frames = new FrameBuffer();
+        this.outbound = new ConcurrentLinkedQueue<>();
+        this.sendLock = new ReentrantLock();
+        this.reading = true;
+        this.deadline = System.currentTimeMillis() + TIMEOUT;
+    }
+
+    public SocketChannel getSocket() {
+        return this.socket;
+    }
+
+    public Player getPlayer() {
+        return this.player;
+    }
+
+    public State getState() {
+        return this.state;
+    }
+
+    /*
+     * Called by the reactor once the connection is registered
+     * @param key: Selection key of the connection
+     */
+    void attach(SelectionKey key) {
+        this.key = key;
+    }
+
+    /*
+     * Starts the authentication with the option request
+     */
+    public void start() {
+        sendOptions();
+    }
+
+    /*
+     * Serves the connection on the calling virtual thread, which blocks on the socket until it is closed
+     */
+    public void serve() {
+        start();
+        while (state != State.CLOSED)
+            read();
+    }
+
+    /*
+     * Reads from the client and handles every whole message, on the reactor thread or the virtual thread
+     * of the connection. A read can end in the middle of a message, which is handled by a later read.
+     * The pooled buffer is given back here once the connection is closed, as only this thread uses it.
+     */
+    void read() {
+        try {
+            if (frames.read(socket) < 0) {
+                disconnect();
+                return;
+            }
+        } catch (IOException exception) {
+            disconnect();
+            return;
+        } finally {
+            if (state == State.CLOSED)
+                frames.release();
+        }
+
+        try {
+            String message;
+            while (state != State.CLOSED && (message = frames.next()) != null)
+                handle(message);
+        } catch (Exception exception) {
+            System.out.println("Error handling player: " + exception);
+            close();
+        } finally {
+            if (state == State.CLOSED)
+                frames.release();
+        }
+    }
+
+    /*
+     * Advances the state machine with the answer of the client
+     * @param message: Message received
+     */
+    private void handle(String message) throws Exception {
+        switch (state) {
+            case OPTION -> {
+                switch (message.toUpperCase()) {
+                    case "1", "2" -> {
+                        option = message;
+                        request(State.USERNAME, "USR", "Username?");
+                    }
+                    case "3" -> request(State.TOKEN, "TKN", "Token?");
+                    default -> terminate("Connection terminated");
+                }
+            }
+            case USERNAME -> {
+                if (message.equals("BACK")) {
+                    sendOptions();
+                    return;
+                }
+                username = message;
+                request(State.PASSWORD, "PSW", "Password?");
+            }
+            case PASSWORD -> {
+                if (message.equals("BACK")) {
+                    sendOptions();
+                    return;
+                }
+                String password = message;
+                authenticate(() -> option.equals("1") ? server.login(socket, username, password)
+                        : server.register(socket, username, password));
+            }
+            case TOKEN -> {
+                System.out.println("TOKEN: " + message);
+                if (message.equals("BACK")) {
+                    sendOptions();
+                    return;
+                }
+                authenticate(() -> server.restore(socket, message));
+            }
+            case AUTH_ACK -> joinQueue(player);
+            case NACK_ACK -> sendOptions();
+            case QUEUE_ACK -> server.enqueue(this);
+            case GAME -> game.answer(player, message);
+            default -> {
+                // Nothing is expected while queued or working
+            }
+        }
+    }
+
+    private interface Authentication {
+        Player run() throws Exception;
+    }
+
+    /*
+     * Runs a login, register or restore on the server workers, then answers AUTH or NACK.
+     * A virtual thread runs it directly, blocking only itself.
+     * @param authentication: Database operation, returns null or throws when it fails
+     */
+    private void authenticate(Authentication authentication) {
+        state = State.WORKING;
+        if (reactor == null) {
+            runAuthentication(authentication).run();
+            return;
+        }
+
+        reading = false;
+        updateInterest();
+        server.submit(() -> {
+            Runnable answer = runAuthentication(authentication);
+            reactor.execute(() -> {
+                if (state == State.CLOSED)
+                    return;
+                reading = true;
+                updateInterest();
+                answer.run();
+            });
+        });
+    }
+
+    /*
+     * Runs the authentication
+     * @param authentication: Database operation, returns null or throws when it fails
+     * @return Sends AUTH or NACK, on the thread serving the connection
+     */
+    private Runnable runAuthentication(Authentication authentication) {
+        Player result = null;
+        String error;
+        try {
+            result = authentication.run();
+            error = null;
+        } catch (Exception exception) {
+            error = exception.getMessage();
+        }
+
+        Player authenticated = result;
+        String failure = error;
+        return () -> {
+            try {
+                if (authenticated != null) {
+                    player = authenticated;
+                    request(State.AUTH_ACK, "AUTH", "token-" + authenticated.getUsername() + ".txt\n" + authenticated.getToken());
+                } else {
+                    request(State.NACK_ACK, "NACK", failure);
+                }
+            } catch (Exception exception) {
+                close();
+            }
+        };
+    }
+
+    /*
+     * Sends the option request
+     */
+    private void sendOptions() {
+        try {
+            request(State.OPTION, "OPT", "1 - Login\n2 - Register\n3 - Restore Connection\n4 - Quit");
+        } catch (Exception exception) {
+            close();
+        }
+    }
+
+    /*
+     * Puts the player in the waiting queue once the client acknowledges the queue message.
+     * Called after the authentication and by games whose players want to play again.
+     * @param player: Authenticated player
+     */
+    public void joinQueue(Player player) throws Exception {
+        this.player = player;
+        this.game = null;
+        request(State.QUEUE_ACK, "QUEUE", server.queueMessage(player));
+    }
+
+    /*
+     * Called by the server, with the queue locked, when the player enters the waiting queue
+     * @param player: Player in the queue, the existing one if the player reconnected
+     */
+    void queued(Player player) {
+        this.player = player;
+        this.state = State.QUEUED;
+    }
+
+    /*
+     * Hands the connection to a game, called by the scheduler
+     * @param game: Game the player was put in
+     */
+    public void startGame(Game game) {
+        this.game = game;
+        this.state = State.GAME;
+    }
+
+    /*
+     * Sends a request and sets the state that handles its answer
+     * @param next: State expecting the answer
+     * @param requestType: Type of request
+     * @param message: Message to send
+     */
+    private void request(State next, String requestType, String message) throws Exception {
+        state = next;
+        send(requestType + "\n" + message);
+    }
+
+    /*
+     * Sends a message, from any thread: queued for the reactor, or written on a blocking connection
+     * @param message: Message to send
+     */
+    public void send(String message) throws IOException {
+        if (!socket.isOpen())
+            throw new ClosedChannelException();
+        if (reactor == null) {
+            sendLock.lock();
+            try {
+                FrameBuffer.send(socket, message);
+            } finally {
+                sendLock.unlock();
+            }
+            return;
+        }
+
+        outbound.add(FrameBuffer.frame(message));
+        if (reactor.inReactorThread())
+            flush();
+        else
+            reactor.execute(this::flush);
+    }
+
+    /*
+     * Writes the queued frames, several per gathering write, until the socket is full, on the reactor thread.
+     * Called after send() and when the socket is writable again.
+     */
+    void flush() {
+        if (!socket.isOpen()) {
+            discard();
+            return;
+        }
+        ByteBuffer[] batch = reactor.writeBatch();
+        try {
+            while (true) {
+                // One gathering write for the frames at the head of the queue, only this thread removes them
+                int queued = 0;
+                for (ByteBuffer frame : outbound) {
+                    batch[queued++] = frame;
+                    if (queued == batch.length)
+                        break;
+                }
+                if (queued == 0)
+                    break;
+
+                socket.write(batch, 0, queued);
+                int written = 0;
+                while (written < queued && !batch[written].hasRemaining()) {
+                    outbound.poll();
+                    FrameBuffer.recycle(batch[written]);
+                    written++;
+                }
+                Arrays.fill(batch, 0, queued, null);
+                if (written < queued)
+                    break; // The socket is full
+            }
+        } catch (IOException exception) {
+            Arrays.fill(batch, null);
+            // A closed session is already being closed, otherwise the client is gone
+            discard();
+            if (state != State.CLOSED)
+                disconnect();
+            return;
+        }
+        updateInterest();
+    }
+
+    /*
+     * Selects the connection for reading unless it is working, and for writing while frames are queued
+     */
+    private void updateInterest() {
+        if (key != null && key.isValid())
+            key.interestOps((reading ? SelectionKey.OP_READ : 0) | (outbound.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+    }
+
+    /*
+     * Gives the frames that will not be written back to the pool, on the reactor thread
+     */
+    private void discard() {
+        ByteBuffer frame;
+        while ((frame = outbound.poll()) != null)
+            FrameBuffer.recycle(frame);
+    }
+
+    /*
+     * Ends the authentication if it took too long, on the reactor thread or the server scheduler
+     * @param now: Current time in milliseconds
+     */
+    void checkTimeout(long now) {
+        State current = state;
+        boolean authenticating = current != null && current != State.WORKING && current.compareTo(State.NACK_ACK) <= 0;
+        if (authenticating && now > deadline) {
+            try {
+                terminate("Connection timeout");
+            } catch (Exception exception) {
+                close();
+            }
+        }
+    }
+
+    /*
+     * Terminates the connection with the player
+     * @param message: Message to send
+     */
+    private void terminate(String message) throws Exception {
+        System.out.println(message);
+        state = State.CLOSED;
+        send("END\n" + message);
+        close();
+    }
+
+    /*
+     * The client closed the connection. Queued players stay in the queue until the next ping,
+     * so they can restore their position; a game in progress is ended.
+     */
+    private void disconnect() {
+        State previous = state;
+        close();
+        if (previous == State.GAME && game != null)
+            game.disconnected(player);
+    }
+
+    /*
+     * Closes the connection, from any thread. With a reactor, the socket is closed by the reactor thread
+     * once it wrote what it could of the queued frames.
+     */
+    public void close() {
+        state = State.CLOSED;
+        server.removeSession(this);
+        if (reactor != null && reactor.isRunning())
+            reactor.execute(this::closeSocket);
+        else
+            closeSocket();
+    }
+
+    private void closeSocket() {
+        if (reactor != null && socket.isOpen())
+            flush();
+        try {
+            socket.close();
+        } catch (IOException exception) {
+            System.out.println("Error closing connection: " + exception.getMessage());
+        }
+        if (reactor != null)
+            discard();
+    }
+}